@@ -1,25 +1,59 @@
 package org.example;
 
 import io.grpc.Server;
+import io.grpc.health.v1.HealthCheckResponse.ServingStatus;
 import io.grpc.netty.NettyServerBuilder;
+import io.grpc.protobuf.services.HealthStatusManager;
+import org.example.config.HandlerExecution;
 import org.example.grpc.ReviewServiceGrpcImpl;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.context.ApplicationContext;
+import org.springframework.core.env.Environment;
+
+import java.util.concurrent.TimeUnit;
 
 @SpringBootApplication
 public class Main {
     public static void main(String[] args) throws Exception {
         ApplicationContext context = SpringApplication.run(Main.class, args);
+        Environment env = context.getEnvironment();
 
         ReviewServiceGrpcImpl grpcService = context.getBean(ReviewServiceGrpcImpl.class);
+        // состояние для проверок здоровья балансировщика gateway
+        HealthStatusManager health = new HealthStatusManager();
+        int port = env.getProperty("grpc.server.port", Integer.class, 9091);
+
+        NettyServerBuilder builder = NettyServerBuilder.forPort(port)
+                // ограничение потоков HTTP/2 на соединение: один клиент не займёт все обработчики
+                .maxConcurrentCallsPerConnection(
+                        env.getProperty("grpc.server.max-concurrent-calls-per-connection", Integer.class, 1000));
+        // обработчики в исполнителе execution.mode; в режиме default - кешируемый пул gRPC
+        context.getBean(HandlerExecution.class).executor(HandlerExecution.Server.GRPC).ifPresent(builder::executor);
 
-        Server server = NettyServerBuilder.forPort(9091)
+        Server server = builder
                 .addService(grpcService)
+                .addService(health.getHealthService())
+                // разрешаем keepalive-пинги клиентов не чаще этого интервала
+                .permitKeepAliveTime(env.getProperty("grpc.server.permit-keepalive-time-ms", Long.class, 10000L),
+                        TimeUnit.MILLISECONDS)
+                .permitKeepAliveWithoutCalls(true)
                 .build()
                 .start();
+        health.setStatus("", ServingStatus.SERVING);
+
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            // балансировщики перестают слать вызовы, текущие вызовы завершаются
+            health.enterTerminalState();
+            server.shutdown();
+            try {
+                server.awaitTermination(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }));
 
-        System.out.println("gRPC ReviewService started on port 9091");
+        System.out.println("gRPC ReviewService started on port " + port);
         server.awaitTermination();
     }
 }
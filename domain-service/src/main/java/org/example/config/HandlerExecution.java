@@ -0,0 +1,103 @@
+package org.example.config;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Исполнитель обработчиков gRPC, Tomcat и слушателей RabbitMQ (execution.mode):
+ * <ul>
+ *     <li>default - собственные пулы каждого сервера, как без настройки;</li>
+ *     <li>virtual - виртуальный поток на задачу: блокирующий вызов MongoDB не занимает поток ОС,
+ *     число операций в работе ограничивает пул соединений драйвера, а не размер пула потоков (Java 21+);</li>
+ *     <li>bounded - фиксированный пул из execution.bounded.threads потоков ОС у gRPC и отдельный такой же
+ *     у Tomcat, для сравнения: зависание обработчиков одного сервера не забирает потоки у другого.
+ *     Слушатели RabbitMQ остаются в потоках своего контейнера.</li>
+ * </ul>
+ */
+@Component
+public class HandlerExecution implements DisposableBean {
+
+    private static final Logger log = LoggerFactory.getLogger(HandlerExecution.class);
+
+    public enum Mode {
+        DEFAULT, VIRTUAL, BOUNDED
+    }
+
+    /**
+     * Получатель исполнителя.
+     */
+    public enum Server {
+        GRPC, HTTP, LISTENER
+    }
+
+    private final Mode mode;
+    private final Map<Server, ExecutorService> executors = new EnumMap<>(Server.class);
+
+    public HandlerExecution(@Value("${execution.mode:default}") String mode,
+                            @Value("${execution.bounded.threads:0}") int boundedThreads) {
+        this.mode = Mode.valueOf(mode.trim().toUpperCase(Locale.ROOT));
+        switch (this.mode) {
+            case DEFAULT -> {
+            }
+            case VIRTUAL -> {
+                ExecutorService virtual = newVirtualThreadPerTaskExecutor();
+                for (Server server : Server.values()) {
+                    executors.put(server, virtual);
+                }
+            }
+            case BOUNDED -> {
+                int threads = boundedThreads > 0 ? boundedThreads : Runtime.getRuntime().availableProcessors() * 8;
+                executors.put(Server.GRPC, newFixedThreadPool("grpc-handler-", threads));
+                executors.put(Server.HTTP, newFixedThreadPool("http-handler-", threads));
+            }
+        }
+        log.info("Handler execution mode: {}", this.mode);
+    }
+
+    public Mode mode() {
+        return mode;
+    }
+
+    /**
+     * @return исполнитель обработчиков сервера; пусто - собственный пул сервера.
+     */
+    public Optional<Executor> executor(Server server) {
+        return Optional.ofNullable(executors.get(server));
+    }
+
+    @Override
+    public void destroy() {
+        executors.values().stream().distinct().forEach(ExecutorService::shutdown);
+    }
+
+    private static ExecutorService newFixedThreadPool(String namePrefix, int threads) {
+        AtomicInteger number = new AtomicInteger();
+        return Executors.newFixedThreadPool(threads,
+                task -> new Thread(task, namePrefix + number.incrementAndGet()));
+    }
+
+    /**
+     * Executors.newVirtualThreadPerTaskExecutor() через рефлексию: сборка остаётся на Java 17,
+     * режим virtual доступен при запуске на Java 21.
+     */
+    private static ExecutorService newVirtualThreadPerTaskExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("execution.mode=virtual requires Java 21+, running on "
+                    + Runtime.version(), e);
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package org.example.config;
+
+import org.example.models.Review;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.IndexOperations;
+import org.springframework.data.mongodb.core.index.MongoPersistentEntityIndexResolver;
+import org.springframework.data.mongodb.core.mapping.MongoMappingContext;
+
+/**
+ * Создание индексов, объявленных аннотациями на документах. Автоматическое создание
+ * индексов Spring Data по умолчанию выключено, поэтому они создаются явно при старте;
+ * уже существующие индексы не пересоздаются.
+ */
+@Configuration
+public class MongoIndexConfig {
+    private static final Logger log = LoggerFactory.getLogger(MongoIndexConfig.class);
+
+    private final MongoTemplate mongoTemplate;
+    private final MongoMappingContext mappingContext;
+
+    public MongoIndexConfig(MongoTemplate mongoTemplate, MongoMappingContext mappingContext) {
+        this.mongoTemplate = mongoTemplate;
+        this.mappingContext = mappingContext;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void ensureIndexes() {
+        IndexOperations indexOps = mongoTemplate.indexOps(Review.class);
+        new MongoPersistentEntityIndexResolver(mappingContext)
+                .resolveIndexFor(Review.class)
+                .forEach(indexOps::ensureIndex);
+        log.info("MongoDB indexes ensured for {}", Review.class.getSimpleName());
+    }
+}
@@ -1,6 +1,14 @@
 package org.example.config;
 
+import org.example.messaging.ReviewCommandMessageConverter;
+import org.springframework.amqp.core.AcknowledgeMode;
+import org.springframework.amqp.core.FanoutExchange;
 import org.springframework.amqp.core.Queue;
+import org.springframework.amqp.rabbit.config.SimpleRabbitListenerContainerFactory;
+import org.springframework.amqp.rabbit.connection.ConnectionFactory;
+import org.springframework.amqp.support.converter.MessageConverter;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.amqp.SimpleRabbitListenerContainerFactoryConfigurer;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
@@ -11,4 +19,82 @@ public class RabbitMQConfig {
     public Queue queue() {
         return new Queue("reviewQueue", true);
     }
+
+    /**
+     * Команды, которые нельзя применить (битое сообщение, отказ MongoDB по конкретному документу),
+     * откладываются сюда вместо возврата в reviewQueue. Отдельная очередь, а не dead-letter-exchange
+     * у reviewQueue: аргументы уже объявленной очереди изменить нельзя.
+     */
+    @Bean
+    public Queue deadLetterQueue(@Value("${rabbitmq.dead-letter.queue:reviewQueue.dlq}") String name) {
+        return new Queue(name, true);
+    }
+
+    /**
+     * События об изменениях отзывов: каждый экземпляр gateway и domain-service получает их в свою очередь.
+     */
+    @Bean
+    public FanoutExchange reviewChangedExchange(
+            @Value("${rabbitmq.events.exchange:reviewChangedExchange}") String exchange) {
+        return new FanoutExchange(exchange);
+    }
+
+    @Bean
+    public MessageConverter reviewCommandMessageConverter(
+            @Value("${rabbitmq.command.accept-legacy:true}") boolean acceptLegacy) {
+        return new ReviewCommandMessageConverter(acceptLegacy);
+    }
+
+    /**
+     * Пачка отдаётся слушателю, когда набрано batch-size сообщений или
+     * очередное сообщение не пришло за batch-max-wait-ms.
+     */
+    @Bean
+    public SimpleRabbitListenerContainerFactory batchListenerContainerFactory(
+            SimpleRabbitListenerContainerFactoryConfigurer configurer,
+            ConnectionFactory connectionFactory,
+            @Value("${rabbitmq.consumer.batch-size:100}") int batchSize,
+            @Value("${rabbitmq.consumer.batch-max-wait-ms:50}") long batchMaxWaitMs,
+            @Value("${rabbitmq.consumer.prefetch:250}") int prefetch,
+            HandlerExecution execution) {
+        SimpleRabbitListenerContainerFactory factory = new SimpleRabbitListenerContainerFactory();
+        configurer.configure(factory, connectionFactory);
+        consumersOn(factory, execution);
+        factory.setBatchListener(true);
+        factory.setConsumerBatchEnabled(true);
+        factory.setBatchSize(batchSize);
+        factory.setReceiveTimeout(batchMaxWaitMs);
+        factory.setPrefetchCount(Math.max(prefetch, batchSize));
+        factory.setAcknowledgeMode(AcknowledgeMode.AUTO);
+        return factory;
+    }
+
+    /**
+     * Один потребитель с ручным подтверждением: сообщения раскладываются
+     * по полосам PartitionedDispatcher, prefetch ограничивает их число в работе.
+     */
+    @Bean
+    public SimpleRabbitListenerContainerFactory partitionedListenerContainerFactory(
+            SimpleRabbitListenerContainerFactoryConfigurer configurer,
+            ConnectionFactory connectionFactory,
+            @Value("${rabbitmq.dispatcher.prefetch:256}") int prefetch,
+            HandlerExecution execution) {
+        SimpleRabbitListenerContainerFactory factory = new SimpleRabbitListenerContainerFactory();
+        configurer.configure(factory, connectionFactory);
+        consumersOn(factory, execution);
+        factory.setConcurrentConsumers(1);
+        factory.setMaxConcurrentConsumers(1);
+        factory.setPrefetchCount(prefetch);
+        factory.setAcknowledgeMode(AcknowledgeMode.MANUAL);
+        return factory;
+    }
+
+    /**
+     * В режиме virtual потребители контейнера работают в виртуальных потоках. Фиксированный пул (bounded)
+     * контейнеру не передаётся: каждый потребитель занимает поток на всё время работы
+     * и при нехватке потоков просто не запустится.
+     */
+    private static void consumersOn(SimpleRabbitListenerContainerFactory factory, HandlerExecution execution) {
+        execution.executor(HandlerExecution.Server.LISTENER).ifPresent(factory::setTaskExecutor);
+    }
 }
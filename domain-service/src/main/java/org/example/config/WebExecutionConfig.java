@@ -0,0 +1,17 @@
+package org.example.config;
+
+import org.springframework.boot.web.embedded.tomcat.TomcatProtocolHandlerCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+public class WebExecutionConfig {
+
+    /**
+     * Обработка HTTP-запросов Tomcat в исполнителе execution.mode вместо его пула потоков.
+     */
+    @Bean
+    public TomcatProtocolHandlerCustomizer<?> handlerExecutionCustomizer(HandlerExecution execution) {
+        return protocolHandler -> execution.executor(HandlerExecution.Server.HTTP).ifPresent(protocolHandler::setExecutor);
+    }
+}
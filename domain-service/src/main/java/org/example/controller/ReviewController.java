@@ -3,6 +3,7 @@ package org.example.controller;
 import org.example.models.Review;
 import org.example.service.ReviewService;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.OptimisticLockingFailureException;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
@@ -33,30 +34,39 @@ public class ReviewController {
                 .orElse(new ResponseEntity<>(HttpStatus.NOT_FOUND));
     }
 
+    /**
+     * Тело запроса на обновление: не переданные поля (null) не меняются.
+     *
+     * @param version ожидаемая версия или null без проверки.
+     */
+    public record ReviewChanges(String client, Integer rating, String comment, Long version) {
+    }
+
     @PostMapping
     public ResponseEntity<Review> createReview(@RequestBody Review review) {
-        Review savedReview = reviewService.saveReview(review);
+        Review savedReview = reviewService.insertReview(review);
         return new ResponseEntity<>(savedReview, HttpStatus.CREATED);
     }
 
+    /**
+     * Обновление переданных полей; version в теле - ожидаемая версия (409, если отзыв уже изменён).
+     */
     @PutMapping("/{id}")
-    public ResponseEntity<Review> updateReview(@PathVariable String  id, @RequestBody Review review) {
-        return reviewService.getReviewById(id)
-                .map(existingReview -> {
-                    review.setId(id);
-                    Review updatedReview = reviewService.saveReview(review);
-                    return new ResponseEntity<>(updatedReview, HttpStatus.OK);
-                })
-                .orElse(new ResponseEntity<>(HttpStatus.NOT_FOUND));
+    public ResponseEntity<Review> updateReview(@PathVariable String  id, @RequestBody ReviewChanges changes) {
+        try {
+            return reviewService.updateReview(id, changes.client(), changes.rating(), changes.comment(),
+                            changes.version())
+                    .map(updatedReview -> new ResponseEntity<>(updatedReview, HttpStatus.OK))
+                    .orElse(new ResponseEntity<>(HttpStatus.NOT_FOUND));
+        } catch (OptimisticLockingFailureException e) {
+            return new ResponseEntity<>(HttpStatus.CONFLICT);
+        }
     }
 
     @DeleteMapping("/{id}")
     public ResponseEntity<Void> deleteReview(@PathVariable String id) {
-        return reviewService.getReviewById(id)
-                .map(review -> {
-                    reviewService.deleteReview(id);
-                    return new ResponseEntity<Void>(HttpStatus.NO_CONTENT);
-                })
-                .orElse(new ResponseEntity<>(HttpStatus.NOT_FOUND));
+        return reviewService.deleteReview(id)
+                ? new ResponseEntity<>(HttpStatus.NO_CONTENT)
+                : new ResponseEntity<>(HttpStatus.NOT_FOUND);
     }
 }
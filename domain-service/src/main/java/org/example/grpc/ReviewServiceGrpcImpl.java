@@ -1,23 +1,54 @@
 package org.example.grpc;
 
+import io.grpc.Status;
+import io.grpc.stub.ServerCallStreamObserver;
 import io.grpc.stub.StreamObserver;
 import org.example.domainservice.*;
 import org.example.models.Review;
 import org.example.repository.ReviewRepository;
+import org.example.service.CommentSearchIndex;
+import org.example.service.RatingStatsAggregator;
+import org.example.service.ReviewService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
 
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Optional;
-import java.util.stream.Collectors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Stream;
 
 @Service
 public class ReviewServiceGrpcImpl extends ReviewServiceGrpc.ReviewServiceImplBase {
+    private static final Logger log = LoggerFactory.getLogger(ReviewServiceGrpcImpl.class);
+
+    private static final int MAX_PAGE_SIZE = 1000;
+    private static final int DEFAULT_SEARCH_PAGE_SIZE = 100;
 
     private final ReviewRepository reviewRepository;
+    private final ReviewService reviewService;
+    private final RatingStatsAggregator ratingStats;
+    private final CommentSearchIndex commentIndex;
+    private final int bulkBatchSize;
 
     @Autowired
-    public ReviewServiceGrpcImpl(ReviewRepository reviewRepository) {
+    public ReviewServiceGrpcImpl(ReviewRepository reviewRepository,
+                                 ReviewService reviewService,
+                                 RatingStatsAggregator ratingStats,
+                                 CommentSearchIndex commentIndex,
+                                 @Value("${grpc.bulk.batch-size:1000}") int bulkBatchSize) {
         this.reviewRepository = reviewRepository;
+        this.reviewService = reviewService;
+        this.ratingStats = ratingStats;
+        this.commentIndex = commentIndex;
+        this.bulkBatchSize = bulkBatchSize;
     }
 
     @Override
@@ -25,14 +56,7 @@ public class ReviewServiceGrpcImpl extends ReviewServiceGrpc.ReviewServiceImplBa
         Optional<Review> optionalReview = reviewRepository.findById(request.getId());
 
         if (optionalReview.isPresent()) {
-            Review review = optionalReview.get();
-            ReviewResponse response = ReviewResponse.newBuilder()
-                    .setId(review.getId())
-                    .setClient(review.getClient())
-                    .setRating(review.getRating())
-                    .setComment(review.getComment())
-                    .build();
-            responseObserver.onNext(response);
+            responseObserver.onNext(toResponse(optionalReview.get()));
         } else {
             responseObserver.onNext(ReviewResponse.getDefaultInstance());
         }
@@ -46,7 +70,11 @@ public class ReviewServiceGrpcImpl extends ReviewServiceGrpc.ReviewServiceImplBa
                 request.getRating(),
                 request.getComment()
         );
-        review = reviewRepository.save(review);
+        if (!request.getId().isEmpty()) {
+            // id назначен отправителем: повторный запрос с тем же id не создаёт дубликат
+            review.setId(request.getId());
+        }
+        review = reviewService.insertReview(review);
 
         CreateReviewResponse response = CreateReviewResponse.newBuilder()
                 .setId(review.getId())
@@ -55,66 +83,275 @@ public class ReviewServiceGrpcImpl extends ReviewServiceGrpc.ReviewServiceImplBa
         responseObserver.onCompleted();
     }
 
+    /**
+     * Потоковая загрузка отзывов. Записи вставляются пачками по bulkBatchSize; следующая пачка
+     * запрашивается у клиента только после записи предыдущей, поэтому скорость отправки
+     * ограничена скоростью MongoDB, а в памяти держится не больше одной пачки.
+     * По завершении (в том числе прерванной загрузки) публикуется одно событие о загрузке.
+     */
     @Override
-    public void updateReview(UpdateReviewRequest request, StreamObserver<UpdateReviewResponse> responseObserver) {
-        Optional<Review> optionalReview = reviewRepository.findById(request.getId());
-        if (optionalReview.isPresent()) {
-            Review review = optionalReview.get();
-            review.setClient(request.getClient());
-            review.setRating(request.getRating());
-            review.setComment(request.getComment());
+    public StreamObserver<CreateReviewRequest> bulkCreateReviews(StreamObserver<BulkCreateReviewsResponse> responseObserver) {
+        ServerCallStreamObserver<BulkCreateReviewsResponse> call =
+                (ServerCallStreamObserver<BulkCreateReviewsResponse>) responseObserver;
+        call.disableAutoRequest();
+        call.request(bulkBatchSize);
 
-            reviewRepository.save(review);
+        return new StreamObserver<>() {
+            private final List<Review> batch = new ArrayList<>(bulkBatchSize);
+            private long inserted;
+            private long failed;
+            private boolean closed;
 
-            UpdateReviewResponse response = UpdateReviewResponse.newBuilder()
-                    .setSuccess(true)
-                    .build();
-            responseObserver.onNext(response);
-        } else {
-            UpdateReviewResponse response = UpdateReviewResponse.newBuilder()
-                    .setSuccess(false)
-                    .build();
-            responseObserver.onNext(response);
+            @Override
+            public void onNext(CreateReviewRequest request) {
+                if (closed) {
+                    return;
+                }
+                Review review = new Review(request.getClient(), request.getRating(), request.getComment());
+                if (!request.getId().isEmpty()) {
+                    review.setId(request.getId());
+                }
+                batch.add(review);
+                if (batch.size() >= bulkBatchSize && flush()) {
+                    call.request(bulkBatchSize);
+                }
+            }
+
+            @Override
+            public void onError(Throwable t) {
+                closed = true;
+                log.warn("Bulk import aborted by client after {} inserted, {} failed: {}", inserted, failed, t.getMessage());
+                reviewService.bulkInsertFinished(inserted);
+            }
+
+            @Override
+            public void onCompleted() {
+                if (closed || !flush()) {
+                    return;
+                }
+                reviewService.bulkInsertFinished(inserted);
+                responseObserver.onNext(BulkCreateReviewsResponse.newBuilder()
+                        .setInserted(inserted)
+                        .setFailed(failed)
+                        .build());
+                responseObserver.onCompleted();
+            }
+
+            private boolean flush() {
+                try {
+                    int written = reviewService.insertReviews(batch);
+                    inserted += written;
+                    failed += batch.size() - written;
+                    batch.clear();
+                    return true;
+                } catch (RuntimeException e) {
+                    closed = true;
+                    log.error("Bulk import failed after {} inserted: {}", inserted, e.getMessage(), e);
+                    reviewService.bulkInsertFinished(inserted);
+                    responseObserver.onError(Status.UNAVAILABLE
+                            .withDescription("Bulk insert failed after " + inserted + " inserted reviews")
+                            .withCause(e)
+                            .asRuntimeException());
+                    return false;
+                }
+            }
+        };
+    }
+
+    /**
+     * Обновление одним запросом к MongoDB; с expected_version - только если версия документа совпадает.
+     */
+    @Override
+    public void updateReview(UpdateReviewRequest request, StreamObserver<UpdateReviewResponse> responseObserver) {
+        Optional<Review> updated;
+        try {
+            updated = reviewService.updateReview(request.getId(),
+                    request.getClient(), request.getRating(), request.getComment(),
+                    request.hasExpectedVersion() ? request.getExpectedVersion() : null);
+        } catch (OptimisticLockingFailureException e) {
+            responseObserver.onError(Status.ABORTED
+                    .withDescription(e.getMessage())
+                    .asRuntimeException());
+            return;
         }
+
+        UpdateReviewResponse.Builder response = UpdateReviewResponse.newBuilder()
+                .setSuccess(updated.isPresent());
+        updated.ifPresent(review -> response.setVersion(review.getVersion()));
+        responseObserver.onNext(response.build());
         responseObserver.onCompleted();
     }
 
     @Override
     public void deleteReview(DeleteReviewRequest request, StreamObserver<DeleteReviewResponse> responseObserver) {
-        if (reviewRepository.existsById(request.getId())) {
-            reviewRepository.deleteById(request.getId());
-            DeleteReviewResponse response = DeleteReviewResponse.newBuilder()
-                    .setSuccess(true)
-                    .build();
-            responseObserver.onNext(response);
+        DeleteReviewResponse response = DeleteReviewResponse.newBuilder()
+                .setSuccess(reviewService.deleteReview(request.getId()))
+                .build();
+        responseObserver.onNext(response);
+        responseObserver.onCompleted();
+    }
+
+    @Override
+    public void getAllReviews(GetAllReviewsRequest request, StreamObserver<GetAllReviewsResponse> responseObserver) {
+        GetAllReviewsResponse.Builder response = GetAllReviewsResponse.newBuilder();
+
+        if (request.getPageSize() <= 0) {
+            // старые клиенты без пагинации получают всю коллекцию
+            reviewRepository.findAll().forEach(r -> response.addReviews(toResponse(r)));
         } else {
-            DeleteReviewResponse response = DeleteReviewResponse.newBuilder()
-                    .setSuccess(false)
-                    .build();
-            responseObserver.onNext(response);
+            int pageSize = Math.min(request.getPageSize(), MAX_PAGE_SIZE);
+            // запрашиваем на одну запись больше, чтобы узнать, есть ли следующая страница
+            Pageable limit = PageRequest.of(0, pageSize + 1);
+            List<Review> page = request.getPageToken().isEmpty()
+                    ? reviewRepository.findAllByOrderByIdAsc(limit)
+                    : reviewRepository.findByIdGreaterThanOrderByIdAsc(request.getPageToken(), limit);
+
+            int count = Math.min(page.size(), pageSize);
+            for (int i = 0; i < count; i++) {
+                response.addReviews(toResponse(page.get(i)));
+            }
+            if (page.size() > pageSize) {
+                response.setNextPageToken(page.get(pageSize - 1).getId());
+            }
         }
+
+        responseObserver.onNext(response.build());
         responseObserver.onCompleted();
     }
 
     @Override
-    public void getAllReviews(GetAllReviewsRequest request, StreamObserver<GetAllReviewsResponse> responseObserver) {
-        var reviews = reviewRepository.findAll();
-
-        var reviewResponses = reviews.stream()
-                .map(r -> ReviewResponse.newBuilder()
-                        .setId(r.getId())
-                        .setClient(r.getClient())
-                        .setRating(r.getRating())
-                        .setComment(r.getComment())
-                        .build()
-                )
-                .collect(Collectors.toList());
-
-        GetAllReviewsResponse response = GetAllReviewsResponse.newBuilder()
-                .addAllReviews(reviewResponses)
-                .build();
+    public void batchGetReviews(BatchGetReviewsRequest request, StreamObserver<BatchGetReviewsResponse> responseObserver) {
+        BatchGetReviewsResponse.Builder response = BatchGetReviewsResponse.newBuilder();
+        reviewRepository.findAllById(request.getIdsList()).forEach(r -> response.addReviews(toResponse(r)));
 
-        responseObserver.onNext(response);
+        responseObserver.onNext(response.build());
+        responseObserver.onCompleted();
+    }
+
+    /**
+     * Поиск по клиенту и диапазону оценок через индексы; курсор страницы - "rating:id" последнего отзыва.
+     */
+    @Override
+    public void searchReviews(SearchReviewsRequest request, StreamObserver<SearchReviewsResponse> responseObserver) {
+        Integer afterRating = null;
+        String afterId = null;
+        if (!request.getPageToken().isEmpty()) {
+            String[] cursor = request.getPageToken().split(":", 2);
+            try {
+                afterRating = Integer.parseInt(cursor[0]);
+                afterId = cursor[1];
+            } catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+                responseObserver.onError(Status.INVALID_ARGUMENT
+                        .withDescription("Malformed page token: " + request.getPageToken())
+                        .asRuntimeException());
+                return;
+            }
+        }
+
+        int pageSize = request.getPageSize() <= 0
+                ? DEFAULT_SEARCH_PAGE_SIZE
+                : Math.min(request.getPageSize(), MAX_PAGE_SIZE);
+        // запрашиваем на одну запись больше, чтобы узнать, есть ли следующая страница
+        List<Review> page = reviewRepository.search(
+                request.getClient().isEmpty() ? null : request.getClient(),
+                request.hasMinRating() ? request.getMinRating() : null,
+                request.hasMaxRating() ? request.getMaxRating() : null,
+                afterRating,
+                afterId,
+                pageSize + 1);
+
+        SearchReviewsResponse.Builder response = SearchReviewsResponse.newBuilder();
+        int count = Math.min(page.size(), pageSize);
+        for (int i = 0; i < count; i++) {
+            response.addReviews(toResponse(page.get(i)));
+        }
+        if (page.size() > pageSize) {
+            Review last = page.get(pageSize - 1);
+            response.setNextPageToken(last.getRating() + ":" + last.getId());
+        }
+        responseObserver.onNext(response.build());
+        responseObserver.onCompleted();
+    }
+
+    /**
+     * Поиск по словам комментария и клиента по индексу в памяти; возвращает только ID и релевантность.
+     */
+    @Override
+    public void searchComments(SearchCommentsRequest request, StreamObserver<SearchCommentsResponse> responseObserver) {
+        int limit = request.getLimit() <= 0
+                ? DEFAULT_SEARCH_PAGE_SIZE
+                : Math.min(request.getLimit(), MAX_PAGE_SIZE);
+
+        SearchCommentsResponse.Builder response = SearchCommentsResponse.newBuilder();
+        for (CommentSearchIndex.Match match : commentIndex.search(request.getQuery(), limit)) {
+            response.addMatches(CommentMatch.newBuilder()
+                    .setId(match.reviewId())
+                    .setScore(match.score()));
+        }
+        responseObserver.onNext(response.build());
         responseObserver.onCompleted();
     }
+
+    /**
+     * Агрегаты оценок из памяти, без обращения к MongoDB.
+     */
+    @Override
+    public void getRatingStats(GetRatingStatsRequest request, StreamObserver<RatingStats> responseObserver) {
+        responseObserver.onNext(ratingStats.snapshot(request.getClient()));
+        responseObserver.onCompleted();
+    }
+
+    /**
+     * Выгрузка всех отзывов потоком прямо из курсора Mongo. Следующая запись читается
+     * только когда транспорт готов её принять (isReady/onReadyHandler), поэтому
+     * память не зависит от размера коллекции, а медленный клиент притормаживает чтение курсора.
+     */
+    @Override
+    public void streamReviews(StreamReviewsRequest request, StreamObserver<ReviewResponse> responseObserver) {
+        ServerCallStreamObserver<ReviewResponse> call = (ServerCallStreamObserver<ReviewResponse>) responseObserver;
+        Stream<Review> reviews = reviewRepository.streamAllByOrderByIdAsc();
+        Iterator<Review> cursor = reviews.iterator();
+        AtomicBoolean finished = new AtomicBoolean();
+
+        call.setOnCancelHandler(() -> {
+            finished.set(true);
+            reviews.close();
+        });
+        // обработчики одного вызова gRPC выполняет последовательно
+        call.setOnReadyHandler(() -> {
+            if (finished.get()) {
+                return;
+            }
+            try {
+                while (call.isReady() && cursor.hasNext()) {
+                    call.onNext(toResponse(cursor.next()));
+                }
+                if (!cursor.hasNext() && finished.compareAndSet(false, true)) {
+                    reviews.close();
+                    call.onCompleted();
+                }
+            } catch (RuntimeException e) {
+                if (finished.compareAndSet(false, true)) {
+                    reviews.close();
+                    call.onError(Status.INTERNAL.withDescription(e.getMessage()).withCause(e).asRuntimeException());
+                }
+            }
+        });
+    }
+
+    public static ReviewResponse toResponse(Review review) {
+        ReviewResponse.Builder builder = ReviewResponse.newBuilder()
+                .setId(review.getId())
+                .setRating(review.getRating());
+        if (review.getClient() != null) {
+            builder.setClient(review.getClient());
+        }
+        if (review.getComment() != null) {
+            builder.setComment(review.getComment());
+        }
+        if (review.getVersion() != null) {
+            builder.setVersion(review.getVersion());
+        }
+        return builder.build();
+    }
 }
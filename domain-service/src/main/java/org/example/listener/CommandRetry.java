@@ -0,0 +1,48 @@
+package org.example.listener;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Повтор применения пачки команд на месте при сбое MongoDB. Сообщения не возвращаются в очередь:
+ * там они встали бы позади более поздних команд тех же отзывов. Пока пачка не применена, её сообщения
+ * не подтверждены, и брокер не выдаёт новых сверх prefetch. Команды, отклонённые MongoDB по
+ * конкретному документу, сюда не доходят - их откладывает {@link org.example.service.ReviewService#applyCommands}.
+ */
+@Component
+public class CommandRetry {
+    private static final Logger log = LoggerFactory.getLogger(CommandRetry.class);
+
+    private final long initialBackoffMs;
+    private final long maxBackoffMs;
+
+    public CommandRetry(@Value("${rabbitmq.consumer.retry.initial-backoff-ms:100}") long initialBackoffMs,
+                        @Value("${rabbitmq.consumer.retry.max-backoff-ms:5000}") long maxBackoffMs) {
+        this.initialBackoffMs = initialBackoffMs;
+        this.maxBackoffMs = maxBackoffMs;
+    }
+
+    /**
+     * Выполняет действие, пока оно не завершится без исключения.
+     *
+     * @throws InterruptedException при остановке потока; сообщения остаются неподтверждёнными.
+     */
+    public void untilApplied(Runnable apply) throws InterruptedException {
+        long backoff = initialBackoffMs;
+        for (int attempt = 1; ; attempt++) {
+            try {
+                apply.run();
+                if (attempt > 1) {
+                    log.info("Batch applied after {} attempts", attempt);
+                }
+                return;
+            } catch (RuntimeException e) {
+                log.warn("Failed to apply batch (attempt {}), retrying in {} ms: {}", attempt, backoff, e.getMessage());
+                Thread.sleep(backoff);
+                backoff = Math.min(backoff * 2, maxBackoffMs);
+            }
+        }
+    }
+}
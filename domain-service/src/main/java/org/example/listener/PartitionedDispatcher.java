@@ -0,0 +1,136 @@
+package org.example.listener;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.example.domainservice.ReviewCommand;
+import org.example.messaging.ReviewCommands;
+import org.example.service.ReviewService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Раскладывает команды по K однопоточным полосам по хешу id отзыва:
+ * команды для одного отзыва выполняются строго последовательно,
+ * для разных - параллельно. Полоса забирает из своей очереди всё накопленное
+ * (до batch-size) и применяет одним bulkWrite, после чего подтверждает сообщения.
+ * При сбое записи полоса повторяет ту же пачку на месте ({@link CommandRetry}) и не берёт следующие
+ * команды: возврат в очередь поставил бы сообщения позади более поздних команд тех же отзывов.
+ */
+@Component
+@ConditionalOnProperty(name = "rabbitmq.consumer.mode", havingValue = "partitioned")
+public class PartitionedDispatcher {
+    private static final Logger log = LoggerFactory.getLogger(PartitionedDispatcher.class);
+
+    /**
+     * Обратный вызов подтверждения конкретного сообщения.
+     */
+    public interface Acknowledgement {
+        void ack() throws Exception;
+    }
+
+    private record Task(ReviewCommand command, Acknowledgement acknowledgement) {
+    }
+
+    private final ReviewService reviewService;
+    private final CommandRetry retry;
+    private final int batchSize;
+    private final List<BlockingQueue<Task>> lanes = new ArrayList<>();
+    private final List<Thread> workers = new ArrayList<>();
+    private volatile boolean running = true;
+
+    public PartitionedDispatcher(ReviewService reviewService,
+                                 CommandRetry retry,
+                                 MeterRegistry meterRegistry,
+                                 @Value("${rabbitmq.dispatcher.lanes:0}") int laneCount,
+                                 @Value("${rabbitmq.dispatcher.lane-depth:64}") int laneDepth,
+                                 @Value("${rabbitmq.consumer.batch-size:100}") int batchSize) {
+        this.reviewService = reviewService;
+        this.retry = retry;
+        this.batchSize = batchSize;
+        int count = laneCount > 0 ? laneCount : Runtime.getRuntime().availableProcessors();
+        for (int i = 0; i < count; i++) {
+            BlockingQueue<Task> lane = new ArrayBlockingQueue<>(laneDepth);
+            lanes.add(lane);
+            Gauge.builder("review.dispatcher.lane.backlog", lane, BlockingQueue::size)
+                    .description("Commands waiting in a dispatcher lane")
+                    .tag("lane", String.valueOf(i))
+                    .register(meterRegistry);
+            Thread worker = new Thread(() -> runLane(lane), "review-lane-" + i);
+            worker.setDaemon(true);
+            workers.add(worker);
+            worker.start();
+        }
+    }
+
+    /**
+     * Ставит команду в полосу её отзыва. Блокируется, если полоса заполнена,
+     * тем самым притормаживая потребителя RabbitMQ.
+     */
+    public void dispatch(ReviewCommand command, Acknowledgement acknowledgement) throws InterruptedException {
+        lanes.get(Math.floorMod(partitionKey(command).hashCode(), lanes.size()))
+                .put(new Task(command, acknowledgement));
+    }
+
+    /**
+     * Полоса выбирается по id отзыва и для CREATE: id назначает gateway, поэтому создание
+     * и последующие изменения того же отзыва попадают в одну полосу.
+     */
+    static String partitionKey(ReviewCommand command) {
+        String id = ReviewCommands.targetId(command);
+        return id.isEmpty() ? command.getMessageId() : id;
+    }
+
+    private void runLane(BlockingQueue<Task> lane) {
+        List<Task> batch = new ArrayList<>(batchSize);
+        List<ReviewCommand> commands = new ArrayList<>(batchSize);
+        while (running) {
+            try {
+                batch.add(lane.take());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            lane.drainTo(batch, batchSize - 1);
+            for (Task task : batch) {
+                commands.add(task.command());
+            }
+
+            try {
+                retry.untilApplied(() -> reviewService.applyCommands(commands));
+            } catch (InterruptedException e) {
+                // остановка: неподтверждённые сообщения брокер доставит заново после закрытия канала
+                Thread.currentThread().interrupt();
+                return;
+            }
+            for (Task task : batch) {
+                settle(task.acknowledgement());
+            }
+            batch.clear();
+            commands.clear();
+        }
+    }
+
+    private static void settle(Acknowledgement acknowledgement) {
+        try {
+            acknowledgement.ack();
+        } catch (Exception e) {
+            // канал закрыт - брокер сам повторно доставит неподтверждённое сообщение
+            log.warn("Failed to settle message: {}", e.getMessage());
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        running = false;
+        workers.forEach(Thread::interrupt);
+    }
+}
@@ -0,0 +1,48 @@
+package org.example.listener;
+
+import com.rabbitmq.client.Channel;
+import org.example.domainservice.ReviewCommand;
+import org.example.messaging.CommandDeadLetters;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.rabbit.annotation.RabbitListener;
+import org.springframework.amqp.support.converter.MessageConversionException;
+import org.springframework.amqp.support.converter.MessageConverter;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+
+/**
+ * Потребитель reviewQueue в режиме rabbitmq.consumer.mode=partitioned.
+ * Сообщение подтверждается вручную только после того, как полоса диспетчера его применила;
+ * в очередь оно не возвращается (см. {@link PartitionedDispatcher}).
+ */
+@Component
+@ConditionalOnProperty(name = "rabbitmq.consumer.mode", havingValue = "partitioned")
+public class PartitionedRabbitMQListener {
+
+    private final PartitionedDispatcher dispatcher;
+    private final MessageConverter messageConverter;
+    private final CommandDeadLetters deadLetters;
+
+    public PartitionedRabbitMQListener(PartitionedDispatcher dispatcher, MessageConverter messageConverter,
+                                       CommandDeadLetters deadLetters) {
+        this.dispatcher = dispatcher;
+        this.messageConverter = messageConverter;
+        this.deadLetters = deadLetters;
+    }
+
+    @RabbitListener(queues = "reviewQueue", containerFactory = "partitionedListenerContainerFactory")
+    public void handleMessage(Message message, Channel channel) throws IOException, InterruptedException {
+        long deliveryTag = message.getMessageProperties().getDeliveryTag();
+        ReviewCommand command;
+        try {
+            command = (ReviewCommand) messageConverter.fromMessage(message);
+        } catch (MessageConversionException e) {
+            deadLetters.park(message, "malformed: " + e.getMessage());
+            channel.basicAck(deliveryTag, false);
+            return;
+        }
+        dispatcher.dispatch(command, () -> channel.basicAck(deliveryTag, false));
+    }
+}
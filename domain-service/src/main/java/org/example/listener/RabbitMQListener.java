@@ -1,64 +1,60 @@
 package org.example.listener;
 
-import org.example.models.Review;
+import org.example.domainservice.ReviewCommand;
+import org.example.messaging.CommandDeadLetters;
 import org.example.service.ReviewService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.amqp.core.Message;
 import org.springframework.amqp.rabbit.annotation.RabbitListener;
+import org.springframework.amqp.support.converter.MessageConversionException;
+import org.springframework.amqp.support.converter.MessageConverter;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.stereotype.Component;
 
+import java.util.ArrayList;
+import java.util.List;
+
 @Component
+@ConditionalOnProperty(name = "rabbitmq.consumer.mode", havingValue = "batch", matchIfMissing = true)
 public class RabbitMQListener {
+    private static final Logger log = LoggerFactory.getLogger(RabbitMQListener.class);
 
     private final ReviewService reviewService;
+    private final MessageConverter messageConverter;
+    private final CommandDeadLetters deadLetters;
+    private final CommandRetry retry;
 
-    public RabbitMQListener(ReviewService reviewService) {
+    public RabbitMQListener(ReviewService reviewService, MessageConverter messageConverter,
+                            CommandDeadLetters deadLetters, CommandRetry retry) {
         this.reviewService = reviewService;
+        this.messageConverter = messageConverter;
+        this.deadLetters = deadLetters;
+        this.retry = retry;
     }
 
-    @RabbitListener(queues = "reviewQueue")
-    public void handleMessage(String message) throws InterruptedException {
-        System.out.println("Received message: " + message);
-        Thread.sleep(20000);
-        processMessage(message);
+    /**
+     * Пачка собирается контейнером (см. RabbitMQConfig#batchListenerContainerFactory)
+     * и подтверждается целиком после успешного bulkWrite. При сбое записи пачка
+     * применяется повторно на месте, а не возвращается в очередь.
+     */
+    @RabbitListener(queues = "reviewQueue", containerFactory = "batchListenerContainerFactory")
+    public void handleBatch(List<Message> messages) throws InterruptedException {
+        log.debug("Received batch of {} messages", messages.size());
+        List<ReviewCommand> commands = decode(messages);
+        retry.untilApplied(() -> reviewService.applyCommands(commands));
     }
 
-    private void processMessage(String message) {
-        String[] parts = message.split(":");
-        String operation = parts[0];
-
-        switch (operation) {
-            case "CREATE":
-                String[] createParts = parts[1].split(",");
-                // createParts[0] -> client
-                // createParts[1] -> rating
-                // createParts[2] -> comment
-                Review newReview = new Review();
-                newReview.setClient(createParts[0]);
-                newReview.setRating(Integer.parseInt(createParts[1]));
-                newReview.setComment(createParts[2]);
-                reviewService.saveReview(newReview);
-                break;
-
-            case "UPDATE":
-                String[] updateInfo = parts[1].split(",");
-                // updateInfo[0] -> id
-                // updateInfo[1] -> client
-                // updateInfo[2] -> rating
-                // updateInfo[3] -> comment
-                String id = updateInfo[0];
-                Review updatedReview = new Review();
-                updatedReview.setId(id);
-                updatedReview.setClient(updateInfo[1]);
-                updatedReview.setRating(Integer.parseInt(updateInfo[2]));
-                updatedReview.setComment(updateInfo[3]);
-                reviewService.saveReview(updatedReview);
-                break;
-
-            case "DELETE":
-                reviewService.deleteReview(parts[1]);
-                break;
-
-            default:
-                System.out.println("Unknown operation: " + operation);
+    private List<ReviewCommand> decode(List<Message> messages) {
+        List<ReviewCommand> commands = new ArrayList<>(messages.size());
+        for (Message message : messages) {
+            try {
+                commands.add((ReviewCommand) messageConverter.fromMessage(message));
+            } catch (MessageConversionException e) {
+                // битое сообщение не должно блокировать всю пачку
+                deadLetters.park(message, "malformed: " + e.getMessage());
+            }
         }
+        return commands;
     }
 }
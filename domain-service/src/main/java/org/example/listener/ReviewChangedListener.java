@@ -0,0 +1,88 @@
+package org.example.listener;
+
+import com.google.protobuf.InvalidProtocolBufferException;
+import jakarta.annotation.PreDestroy;
+import org.example.domainservice.ReviewChanged;
+import org.example.service.CommentSearchIndex;
+import org.example.service.RatingStatsAggregator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.amqp.AmqpRejectAndDontRequeueException;
+import org.springframework.amqp.core.ExchangeTypes;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.rabbit.annotation.Exchange;
+import org.springframework.amqp.rabbit.annotation.Queue;
+import org.springframework.amqp.rabbit.annotation.QueueBinding;
+import org.springframework.amqp.rabbit.annotation.RabbitListener;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * События об изменениях отзывов от всех экземпляров domain-service, включая этот: по ним
+ * агрегаты оценок и индекс поиска по комментариям сходятся между экземплярами. Очередь анонимная, своя у каждого экземпляра.
+ * Свои изменения уже учтены при записи, повторное применение отбрасывается по версии.
+ * После потоковой загрузки приходит одно событие без отзывов: агрегаты и индекс перестраиваются
+ * по снимку MongoDB в отдельном потоке (загрузивший экземпляр тоже). Поиск, статистика и применение
+ * событий во время перестроения не останавливаются; несколько загрузок подряд дают одно перестроение,
+ * если следующее событие пришло до начала уже запрошенного.
+ */
+@Component
+public class ReviewChangedListener {
+    private static final Logger log = LoggerFactory.getLogger(ReviewChangedListener.class);
+
+    private final RatingStatsAggregator ratingStats;
+    private final CommentSearchIndex commentIndex;
+    private final ExecutorService rebuildExecutor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "review-rebuild");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final AtomicBoolean rebuildPending = new AtomicBoolean();
+
+    public ReviewChangedListener(RatingStatsAggregator ratingStats, CommentSearchIndex commentIndex) {
+        this.ratingStats = ratingStats;
+        this.commentIndex = commentIndex;
+    }
+
+    @RabbitListener(bindings = @QueueBinding(
+            value = @Queue,
+            exchange = @Exchange(value = "${rabbitmq.events.exchange:reviewChangedExchange}", type = ExchangeTypes.FANOUT)))
+    public void onReviewChanged(Message message) {
+        ReviewChanged event;
+        try {
+            event = ReviewChanged.parseFrom(message.getBody());
+        } catch (InvalidProtocolBufferException e) {
+            log.error("Malformed ReviewChanged event: {}", e.getMessage());
+            throw new AmqpRejectAndDontRequeueException("Malformed ReviewChanged", e);
+        }
+        if (event.getBulkLoaded()) {
+            scheduleRebuild();
+            return;
+        }
+        ratingStats.apply(event);
+        commentIndex.apply(event);
+    }
+
+    private void scheduleRebuild() {
+        if (!rebuildPending.compareAndSet(false, true)) {
+            return;
+        }
+        rebuildExecutor.execute(() -> {
+            rebuildPending.set(false);
+            try {
+                ratingStats.rebuild();
+                commentIndex.rebuild();
+            } catch (RuntimeException e) {
+                log.error("Rebuild after bulk import failed: {}", e.getMessage(), e);
+            }
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        rebuildExecutor.shutdownNow();
+    }
+}
@@ -0,0 +1,68 @@
+package org.example.messaging;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.example.domainservice.ReviewCommand;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.amqp.AmqpException;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.amqp.support.converter.MessageConverter;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Откладывает неприменимые команды в очередь rabbitmq.dead-letter.queue с причиной в заголовке.
+ * Такая команда подтверждается вместе с остальными и не блокирует reviewQueue повторными доставками.
+ */
+@Component
+public class CommandDeadLetters {
+    private static final Logger log = LoggerFactory.getLogger(CommandDeadLetters.class);
+
+    public static final String REASON_HEADER = "x-rejection-reason";
+
+    private final RabbitTemplate rabbitTemplate;
+    private final MessageConverter messageConverter;
+    private final String queue;
+    private final Counter parked;
+
+    public CommandDeadLetters(RabbitTemplate rabbitTemplate,
+                              MessageConverter messageConverter,
+                              MeterRegistry meterRegistry,
+                              @Value("${rabbitmq.dead-letter.queue:reviewQueue.dlq}") String queue) {
+        this.rabbitTemplate = rabbitTemplate;
+        this.messageConverter = messageConverter;
+        this.queue = queue;
+        this.parked = Counter.builder("review.commands.dead_lettered")
+                .description("Review commands moved to the dead-letter queue")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Сообщение, которое не удалось разобрать, откладывается как есть.
+     */
+    public void park(Message message, String reason) {
+        log.warn("Dead-lettering message {}: {}", message.getMessageProperties().getMessageId(), reason);
+        message.getMessageProperties().setHeader(REASON_HEADER, reason);
+        send(message);
+    }
+
+    public void park(ReviewCommand command, String reason) {
+        log.warn("Dead-lettering {} command {}: {}", command.getCommandCase(), command.getMessageId(), reason);
+        MessageProperties properties = new MessageProperties();
+        properties.setHeader(REASON_HEADER, reason);
+        send(messageConverter.toMessage(command, properties));
+    }
+
+    private void send(Message message) {
+        parked.increment();
+        try {
+            rabbitTemplate.send("", queue, message);
+        } catch (AmqpException e) {
+            // команда уже исключена из пачки: без очереди отложенных остаётся только запись в журнале
+            log.error("Failed to dead-letter message: {}", e.getMessage());
+        }
+    }
+}
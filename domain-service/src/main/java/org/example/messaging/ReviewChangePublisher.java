@@ -0,0 +1,232 @@
+package org.example.messaging;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.example.domainservice.ReviewChanged;
+import org.example.grpc.ReviewServiceGrpcImpl;
+import org.example.models.Review;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.amqp.AmqpException;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Публикация событий {@link ReviewChanged} после применённых изменений отзывов.
+ * По ним gateway точечно обновляет свой кеш вместо сброса, а остальные экземпляры domain-service -
+ * агрегаты оценок и индекс поиска по комментариям.
+ * <p>
+ * Версия события - версия документа в MongoDB ({@link Review#getVersion()}): она растёт при каждом
+ * изменении отзыва независимо от того, какой экземпляр domain-service его записал, поэтому gateway
+ * может отбрасывать устаревшие события. Удаление получает версию удалённого документа плюс один.
+ * Отзыв, созданный заново с id удалённого, начинает с версии 0, и gateway считает его удалённым,
+ * пока не истечёт отметка версии удаления (cache.change-events.version-ttl-seconds).
+ */
+@Component
+public class ReviewChangePublisher {
+    private static final Logger log = LoggerFactory.getLogger(ReviewChangePublisher.class);
+
+    private final RabbitTemplate rabbitTemplate;
+    private final String exchange;
+    private final int maxPending;
+    private final long initialBackoffMs;
+    private final long maxBackoffMs;
+    private final ScheduledExecutorService retryExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "review-events-retry");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // неотправленные события по порядку публикации; поля ниже - под this
+    private final Deque<ReviewChanged> pending = new ArrayDeque<>();
+    // часть событий отброшена: после восстановления связи нужно полное перестроение у получателей
+    private boolean resyncRequired;
+    private boolean retryScheduled;
+    private long backoffMs;
+
+    public ReviewChangePublisher(RabbitTemplate rabbitTemplate,
+                                 MeterRegistry meterRegistry,
+                                 @Value("${rabbitmq.events.exchange:reviewChangedExchange}") String exchange,
+                                 @Value("${rabbitmq.events.pending-max:100000}") int maxPending,
+                                 @Value("${rabbitmq.events.retry.initial-backoff-ms:100}") long initialBackoffMs,
+                                 @Value("${rabbitmq.events.retry.max-backoff-ms:5000}") long maxBackoffMs) {
+        this.rabbitTemplate = rabbitTemplate;
+        this.exchange = exchange;
+        this.maxPending = maxPending;
+        this.initialBackoffMs = initialBackoffMs;
+        this.maxBackoffMs = maxBackoffMs;
+        this.backoffMs = initialBackoffMs;
+        Gauge.builder("review.events.pending", this, publisher -> publisher.pendingCount())
+                .description("Review change events waiting to be republished")
+                .register(meterRegistry);
+    }
+
+    public static ReviewChanged changed(Review review) {
+        return ReviewChanged.newBuilder()
+                .setId(review.getId())
+                .setVersion(versionOf(review))
+                .setReview(ReviewServiceGrpcImpl.toResponse(review))
+                .build();
+    }
+
+    /**
+     * @param removed удалённый документ.
+     */
+    public static ReviewChanged deleted(Review removed) {
+        return ReviewChanged.newBuilder()
+                .setId(removed.getId())
+                .setVersion(versionOf(removed) + 1)
+                .setDeleted(true)
+                .build();
+    }
+
+    /**
+     * Одно событие на всю потоковую загрузку вместо события на каждый вставленный отзыв.
+     */
+    public static ReviewChanged bulkLoaded() {
+        return ReviewChanged.newBuilder()
+                .setBulkLoaded(true)
+                .build();
+    }
+
+    // документы, записанные до появления поля version, считаются версией 0
+    private static long versionOf(Review review) {
+        return review.getVersion() == null ? 0 : review.getVersion();
+    }
+
+    public void publish(ReviewChanged event) {
+        publish(List.of(event));
+    }
+
+    /**
+     * Изменение уже записано в MongoDB, поэтому ошибка публикации его не откатывает. Но по событиям
+     * сходятся не только кеш gateway, а и агрегаты оценок и индекс поиска остальных экземпляров
+     * domain-service, поэтому неотправленные события не теряются: они повторяются в фоне с
+     * экспоненциальной задержкой, новые события встают за ними. Если неотправленных больше
+     * rabbitmq.events.pending-max, они отбрасываются, а после восстановления связи публикуется
+     * {@link #bulkLoaded()}: получатели перестраивают агрегаты и индекс по MongoDB, gateway сбрасывает
+     * индекс списка. Вызывающий поток публикацию не ждёт дольше одной попытки.
+     */
+    public void publish(List<ReviewChanged> events) {
+        if (events.isEmpty()) {
+            return;
+        }
+        synchronized (this) {
+            if (!pending.isEmpty() || resyncRequired) {
+                enqueue(events);
+                return;
+            }
+        }
+        try {
+            send(events);
+        } catch (AmqpException e) {
+            log.warn("Failed to publish {} review change events, retrying in background: {}",
+                    events.size(), e.getMessage());
+            synchronized (this) {
+                enqueue(events);
+            }
+        }
+    }
+
+    private void send(List<ReviewChanged> events) {
+        rabbitTemplate.invoke(operations -> {
+            for (ReviewChanged event : events) {
+                MessageProperties properties = new MessageProperties();
+                properties.setContentType(ReviewCommandMessageConverter.CONTENT_TYPE);
+                operations.send(exchange, "", new Message(event.toByteArray(), properties));
+            }
+            return null;
+        });
+    }
+
+    // под this
+    private void enqueue(List<ReviewChanged> events) {
+        pending.addAll(events);
+        trimPending();
+        scheduleRetry();
+    }
+
+    // под this
+    private void trimPending() {
+        if (pending.size() > maxPending) {
+            log.error("Dropping {} unpublished review change events; receivers will rebuild from MongoDB "
+                    + "once the broker is reachable", pending.size());
+            pending.clear();
+            resyncRequired = true;
+        }
+    }
+
+    // под this
+    private void scheduleRetry() {
+        if (!retryScheduled) {
+            retryScheduled = true;
+            retryExecutor.schedule(this::retryPending, backoffMs, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void retryPending() {
+        List<ReviewChanged> batch;
+        boolean resync;
+        synchronized (this) {
+            retryScheduled = false;
+            batch = new ArrayList<>(pending);
+            pending.clear();
+            resync = resyncRequired;
+            resyncRequired = false;
+        }
+        List<ReviewChanged> outgoing = batch;
+        if (resync) {
+            outgoing = new ArrayList<>(batch);
+            outgoing.add(bulkLoaded());
+        }
+        try {
+            send(outgoing);
+            log.info("Published {} pending review change events{}", batch.size(), resync ? " and a resync request" : "");
+            synchronized (this) {
+                backoffMs = initialBackoffMs;
+                if (!pending.isEmpty() || resyncRequired) {
+                    scheduleRetry();
+                }
+            }
+        } catch (AmqpException e) {
+            synchronized (this) {
+                // обратно в начало очереди, перед событиями, пришедшими за время попытки
+                for (int i = batch.size() - 1; i >= 0; i--) {
+                    pending.addFirst(batch.get(i));
+                }
+                resyncRequired |= resync;
+                trimPending();
+                backoffMs = Math.min(backoffMs * 2, maxBackoffMs);
+                log.warn("Failed to republish {} review change events, retrying in {} ms: {}",
+                        pending.size(), backoffMs, e.getMessage());
+                scheduleRetry();
+            }
+        }
+    }
+
+    private synchronized int pendingCount() {
+        return pending.size();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        retryExecutor.shutdownNow();
+        synchronized (this) {
+            if (!pending.isEmpty() || resyncRequired) {
+                log.error("Stopping with {} unpublished review change events", pending.size());
+            }
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package org.example.messaging;
+
+import com.google.protobuf.InvalidProtocolBufferException;
+import org.example.domainservice.CreateReviewRequest;
+import org.example.domainservice.DeleteReviewRequest;
+import org.example.domainservice.ReviewCommand;
+import org.example.domainservice.UpdateReviewRequest;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.support.converter.MessageConversionException;
+import org.springframework.amqp.support.converter.MessageConverter;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Конвертер сообщений канала gateway -> domain-service.
+ * Основной формат - protobuf {@link ReviewCommand}. В режиме миграции
+ * дополнительно принимаются старые строковые сообщения вида "CREATE:client,rating,comment".
+ */
+public class ReviewCommandMessageConverter implements MessageConverter {
+
+    public static final String CONTENT_TYPE = "application/x-protobuf";
+    public static final String SCHEMA_VERSION_HEADER = "x-schema-version";
+    public static final int SCHEMA_VERSION = 1;
+
+    private final boolean acceptLegacy;
+
+    public ReviewCommandMessageConverter(boolean acceptLegacy) {
+        this.acceptLegacy = acceptLegacy;
+    }
+
+    @Override
+    public Message toMessage(Object object, MessageProperties messageProperties) {
+        if (!(object instanceof ReviewCommand command)) {
+            throw new MessageConversionException("Unsupported payload type: " + object.getClass().getName());
+        }
+        messageProperties.setContentType(CONTENT_TYPE);
+        messageProperties.setHeader(SCHEMA_VERSION_HEADER, command.getSchemaVersion());
+        if (!command.getMessageId().isEmpty()) {
+            messageProperties.setMessageId(command.getMessageId());
+        }
+        byte[] body = command.toByteArray();
+        messageProperties.setContentLength(body.length);
+        return new Message(body, messageProperties);
+    }
+
+    @Override
+    public Object fromMessage(Message message) {
+        String contentType = message.getMessageProperties().getContentType();
+        if (CONTENT_TYPE.equals(contentType)) {
+            try {
+                return ReviewCommand.parseFrom(message.getBody());
+            } catch (InvalidProtocolBufferException e) {
+                throw new MessageConversionException("Malformed ReviewCommand", e);
+            }
+        }
+        if (acceptLegacy) {
+            return parseLegacy(new String(message.getBody(), StandardCharsets.UTF_8),
+                    message.getMessageProperties().getMessageId());
+        }
+        throw new MessageConversionException("Unsupported content type: " + contentType);
+    }
+
+    /**
+     * Разбор старого текстового формата. Комментарий - последнее поле,
+     * поэтому запятые внутри него сохраняются. messageId свойств AMQP переносится в команду:
+     * по нему назначается id отзыва для CREATE, одинаковый при повторной доставке.
+     */
+    static ReviewCommand parseLegacy(String message, String messageId) {
+        String[] parts = message.split(":", 2);
+        if (parts.length < 2) {
+            throw new MessageConversionException("Malformed legacy message: " + message);
+        }
+        ReviewCommand.Builder builder = ReviewCommand.newBuilder()
+                .setSchemaVersion(0)
+                .setTimestamp(System.currentTimeMillis());
+        if (messageId != null) {
+            builder.setMessageId(messageId);
+        }
+        try {
+            switch (parts[0]) {
+                case "CREATE" -> {
+                    String[] createParts = parts[1].split(",", 3);
+                    builder.setCreate(CreateReviewRequest.newBuilder()
+                            .setClient(createParts[0])
+                            .setRating(Integer.parseInt(createParts[1].trim()))
+                            .setComment(createParts[2]));
+                }
+                case "UPDATE" -> {
+                    String[] updateParts = parts[1].split(",", 4);
+                    builder.setUpdate(UpdateReviewRequest.newBuilder()
+                            .setId(updateParts[0])
+                            .setClient(updateParts[1])
+                            .setRating(Integer.parseInt(updateParts[2].trim()))
+                            .setComment(updateParts[3]));
+                }
+                case "DELETE" -> builder.setDelete(DeleteReviewRequest.newBuilder().setId(parts[1]));
+                default -> throw new MessageConversionException("Unknown operation: " + parts[0]);
+            }
+        } catch (ArrayIndexOutOfBoundsException | NumberFormatException e) {
+            throw new MessageConversionException("Malformed legacy message: " + message, e);
+        }
+        return builder.build();
+    }
+}
@@ -0,0 +1,44 @@
+package org.example.messaging;
+
+import org.bson.types.ObjectId;
+import org.example.domainservice.ReviewCommand;
+
+import java.nio.charset.StandardCharsets;
+import java.util.UUID;
+
+/**
+ * Общие правила разбора команд {@link ReviewCommand}.
+ */
+public final class ReviewCommands {
+
+    private ReviewCommands() {
+    }
+
+    /**
+     * id отзыва, к которому относится команда. CREATE несёт id, выбранный gateway; для CREATE без id
+     * (старый текстовый формат) id выводится из messageId: повторная доставка той же команды попадает
+     * на тот же документ и отбрасывается как дубликат, а не создаёт копию.
+     *
+     * @return id отзыва или пустая строка для команды без отзыва.
+     */
+    public static String targetId(ReviewCommand command) {
+        return switch (command.getCommandCase()) {
+            case CREATE -> {
+                if (!command.getCreate().getId().isEmpty()) {
+                    yield command.getCreate().getId();
+                }
+                if (command.getMessageId().isEmpty()) {
+                    // без messageId повтор не распознать
+                    yield new ObjectId().toHexString();
+                }
+                UUID derived = UUID.nameUUIDFromBytes(command.getMessageId().getBytes(StandardCharsets.UTF_8));
+                // 24 hex-символа, как у ObjectId
+                yield String.format("%016x%016x", derived.getMostSignificantBits(), derived.getLeastSignificantBits())
+                        .substring(0, 24);
+            }
+            case UPDATE -> command.getUpdate().getId();
+            case DELETE -> command.getDelete().getId();
+            default -> "";
+        };
+    }
+}
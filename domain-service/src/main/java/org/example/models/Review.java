@@ -1,9 +1,14 @@
 package org.example.models;
 
 import org.springframework.data.annotation.Id;
+import org.springframework.data.annotation.Version;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
 import org.springframework.data.mongodb.core.mapping.Document;
 
 @Document(collection = "reviews")
+// индексы поиска (SearchReviews): фильтр по клиенту и/или диапазону оценок, сортировка по (rating, _id)
+@CompoundIndex(name = "client_rating_id", def = "{'client': 1, 'rating': 1, '_id': 1}")
+@CompoundIndex(name = "rating_id", def = "{'rating': 1, '_id': 1}")
 public class Review {
 
     @Id
@@ -11,6 +16,9 @@ public class Review {
     private String client;
     private int rating;
     private String comment;
+    // увеличивается при каждом изменении; у документов, записанных до появления поля, отсутствует
+    @Version
+    private Long version;
 
     public Review() {
     }
@@ -52,4 +60,12 @@ public class Review {
     public void setComment(String comment) {
         this.comment = comment;
     }
+
+    public Long getVersion() {
+        return version;
+    }
+
+    public void setVersion(Long version) {
+        this.version = version;
+    }
 }
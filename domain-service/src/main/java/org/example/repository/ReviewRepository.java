@@ -1,9 +1,21 @@
 package org.example.repository;
 
 import org.example.models.Review;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.mongodb.repository.MongoRepository;
 import org.springframework.stereotype.Repository;
 
+import java.util.List;
+import java.util.stream.Stream;
+
 @Repository
-public interface ReviewRepository extends MongoRepository<Review, String> {
+public interface ReviewRepository extends MongoRepository<Review, String>, ReviewRepositoryCustom {
+
+    // keyset-пагинация по _id: первая страница и страницы после заданного id
+    List<Review> findAllByOrderByIdAsc(Pageable pageable);
+
+    List<Review> findByIdGreaterThanOrderByIdAsc(String id, Pageable pageable);
+
+    // курсор Mongo; поток нужно закрыть после чтения
+    Stream<Review> streamAllByOrderByIdAsc();
 }
@@ -0,0 +1,22 @@
+package org.example.repository;
+
+import org.example.models.Review;
+
+import java.util.List;
+
+public interface ReviewRepositoryCustom {
+
+    /**
+     * Отзывы с фильтром по клиенту и диапазону оценок в порядке (rating, _id).
+     * Обслуживается индексами {client, rating, _id} и {rating, _id}.
+     *
+     * @param client      клиент или null.
+     * @param minRating   нижняя граница оценки (включительно) или null.
+     * @param maxRating   верхняя граница оценки (включительно) или null.
+     * @param afterRating оценка последнего отзыва предыдущей страницы или null для первой страницы.
+     * @param afterId     id последнего отзыва предыдущей страницы или null для первой страницы.
+     * @param limit       максимум отзывов.
+     */
+    List<Review> search(String client, Integer minRating, Integer maxRating,
+                        Integer afterRating, String afterId, int limit);
+}
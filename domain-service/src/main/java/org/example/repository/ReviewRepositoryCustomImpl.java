@@ -0,0 +1,55 @@
+package org.example.repository;
+
+import org.example.models.Review;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+
+public class ReviewRepositoryCustomImpl implements ReviewRepositoryCustom {
+
+    private final MongoTemplate mongoTemplate;
+
+    public ReviewRepositoryCustomImpl(MongoTemplate mongoTemplate) {
+        this.mongoTemplate = mongoTemplate;
+    }
+
+    @Override
+    public List<Review> search(String client, Integer minRating, Integer maxRating,
+                               Integer afterRating, String afterId, int limit) {
+        List<Criteria> filters = new ArrayList<>();
+        if (client != null) {
+            filters.add(where("client").is(client));
+        }
+        if (minRating != null || maxRating != null) {
+            Criteria rating = where("rating");
+            if (minRating != null) {
+                rating = rating.gte(minRating);
+            }
+            if (maxRating != null) {
+                rating = rating.lte(maxRating);
+            }
+            filters.add(rating);
+        }
+        if (afterRating != null && afterId != null) {
+            // строго после (afterRating, afterId) в порядке сортировки
+            filters.add(new Criteria().orOperator(
+                    where("rating").gt(afterRating),
+                    new Criteria().andOperator(where("rating").is(afterRating), where("id").gt(afterId))));
+        }
+
+        Query query = new Query();
+        if (!filters.isEmpty()) {
+            query.addCriteria(new Criteria().andOperator(filters));
+        }
+        query.with(Sort.by(Sort.Order.asc("rating"), Sort.Order.asc("id")))
+                .limit(limit);
+        query.fields().include("client", "rating", "comment", "version");
+        return mongoTemplate.find(query, Review.class);
+    }
+}
@@ -0,0 +1,471 @@
+package org.example.service;
+
+import org.example.domainservice.ReviewChanged;
+import org.example.models.Review;
+import org.example.repository.ReviewRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Stream;
+
+/**
+ * Инвертированный индекс по тексту отзыва (comment) и клиенту для поиска по ключевым словам.
+ * Словарь терминов отображает слово в номер термина, списки вхождений хранятся в массивах int
+ * (внутренний номер документа и частота термина в нём), ранжирование - BM25.
+ * <p>
+ * Индекс обновляется по событиям {@link ReviewChanged}: свои изменения экземпляр применяет сразу,
+ * изменения других экземпляров domain-service - по событиям из reviewChangedExchange
+ * (см. ReviewChangedListener). У документа хранится версия отзыва, событие с версией не новее
+ * проиндексированной отбрасывается, поэтому повторы и снимок MongoDB при старте не портят индекс.
+ * Индексы экземпляров сходятся только по событиям: неотправленное событие отправитель повторяет,
+ * а если повторов накопилось слишком много, вместо них публикует запрос перестроения
+ * (см. ReviewChangePublisher).
+ * Удалённый документ только помечается; когда помеченных становится больше живых,
+ * списки вхождений уплотняются с перенумерацией документов.
+ * <p>
+ * Перестроение (при старте и после потоковой загрузки) читает снимок MongoDB в новый индекс без
+ * блокировки: поиск и запись идут по текущему. События, применённые за время чтения, запоминаются
+ * и под короткой блокировкой записи доприменяются к новому индексу, который затем заменяет текущий.
+ * Замена убирает и отзывы, удалённые в MongoDB, событие об удалении которых было потеряно.
+ */
+@Component
+public class CommentSearchIndex {
+    private static final Logger log = LoggerFactory.getLogger(CommentSearchIndex.class);
+
+    private static final float K1 = 1.2f;
+    private static final float B = 0.75f;
+    private static final int INITIAL_CAPACITY = 1024;
+    private static final int MIN_DELETED_TO_COMPACT = 1024;
+
+    private final ReviewRepository reviewRepository;
+    private final boolean enabled;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    // свободные буферы оценок: поиск не выделяет массив размером с индекс на каждый запрос.
+    // Не ThreadLocal - при обработке в виртуальных потоках у каждого запроса был бы свой буфер.
+    // Число хранимых буферов ограничено, лишние после всплеска запросов отдаются сборщику мусора
+    private final Queue<Scores> scratch;
+    private final RecentDeletions deletions;
+
+    // текущий индекс; читается и меняется под lock
+    private Index index = new Index();
+    // события, применённые за время перестроения; null - перестроения нет
+    private List<ReviewChanged> appliedDuringRebuild;
+
+    public CommentSearchIndex(ReviewRepository reviewRepository,
+                              @Value("${search.comments.enabled:true}") boolean enabled,
+                              @Value("${search.comments.scratch-buffers:0}") int scratchBuffers,
+                              @Value("${review.changes.deleted-ttl-ms:300000}") long deletedTtlMs,
+                              @Value("${review.changes.deleted-max:100000}") int deletedMax) {
+        this.reviewRepository = reviewRepository;
+        this.enabled = enabled;
+        this.scratch = new ArrayBlockingQueue<>(
+                scratchBuffers > 0 ? scratchBuffers : Runtime.getRuntime().availableProcessors());
+        this.deletions = new RecentDeletions(deletedTtlMs, deletedMax);
+    }
+
+    /**
+     * Найденный отзыв и его оценка релевантности.
+     */
+    public record Match(String reviewId, float score) {
+    }
+
+    /**
+     * Учёт изменения отзыва, если версия события новее проиндексированной.
+     */
+    public void apply(ReviewChanged event) {
+        if (!enabled) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            index.apply(event, deletions);
+            if (appliedDuringRebuild != null) {
+                appliedDuringRebuild.add(event);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Перестроение по снимку коллекции (при старте и после потоковой загрузки). Снимок читается
+     * в новый индекс без блокировки; блокировка записи держится только на время доприменения событий,
+     * пришедших во время чтения, и замены индекса. Перестроения выполняются по одному.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public synchronized void rebuild() {
+        if (!enabled) {
+            return;
+        }
+        long started = System.nanoTime();
+        lock.writeLock().lock();
+        try {
+            appliedDuringRebuild = new ArrayList<>();
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        Index rebuilt = new Index();
+        try (Stream<Review> reviews = reviewRepository.streamAllByOrderByIdAsc()) {
+            reviews.forEach(review -> rebuilt.apply(review.getId(),
+                    review.getVersion() == null ? 0 : review.getVersion(),
+                    review.getClient(), review.getComment(), false, deletions));
+            lock.writeLock().lock();
+            try {
+                // события новее снимка; строки снимка той же или большей версии их отбрасывают
+                appliedDuringRebuild.forEach(event -> rebuilt.apply(event, deletions));
+                index = rebuilt;
+            } finally {
+                appliedDuringRebuild = null;
+                lock.writeLock().unlock();
+            }
+        } catch (RuntimeException e) {
+            lock.writeLock().lock();
+            try {
+                appliedDuringRebuild = null;
+            } finally {
+                lock.writeLock().unlock();
+            }
+            throw e;
+        }
+        log.info("Comment index rebuilt: {} reviews, {} terms, {} postings in {} ms", rebuilt.liveDocs(),
+                rebuilt.termCount, rebuilt.postingCount(), (System.nanoTime() - started) / 1_000_000);
+    }
+
+    /**
+     * Лучшие по BM25 отзывы, содержащие хотя бы одно слово запроса.
+     *
+     * @param query слова через пробел; регистр и знаки препинания не учитываются.
+     * @param limit максимальное число результатов.
+     * @return результаты по убыванию релевантности.
+     */
+    public List<Match> search(String query, int limit) {
+        Set<String> terms = tokenize(query).keySet();
+        if (!enabled || terms.isEmpty() || limit <= 0) {
+            return List.of();
+        }
+
+        lock.readLock().lock();
+        try {
+            Scores polled = scratch.poll();
+            Scores scores = polled != null ? polled : new Scores();
+            try {
+                return index.search(terms, limit, scores);
+            } finally {
+                scores.reset();
+                scratch.offer(scores);
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Слова текста в нижнем регистре с частотами; словом считается последовательность букв и цифр.
+     */
+    static Map<String, Integer> tokenize(String text) {
+        Map<String, Integer> frequencies = new HashMap<>();
+        if (text == null) {
+            return frequencies;
+        }
+        int start = -1;
+        for (int i = 0; i <= text.length(); i++) {
+            boolean wordChar = i < text.length() && Character.isLetterOrDigit(text.charAt(i));
+            if (wordChar && start < 0) {
+                start = i;
+            } else if (!wordChar && start >= 0) {
+                frequencies.merge(text.substring(start, i).toLowerCase(Locale.ROOT), 1, Integer::sum);
+                start = -1;
+            }
+        }
+        return frequencies;
+    }
+
+    /**
+     * Данные индекса: словарь терминов, списки вхождений и документы.
+     */
+    private static final class Index {
+        private final Map<String, Integer> termIds = new HashMap<>();
+        private Postings[] postings = new Postings[INITIAL_CAPACITY];
+        private int[] docFrequency = new int[INITIAL_CAPACITY];
+        private int termCount;
+
+        private final Map<String, Integer> docIds = new HashMap<>();
+        private String[] reviewIds = new String[INITIAL_CAPACITY];
+        private int[] docLengths = new int[INITIAL_CAPACITY];
+        private long[] docVersions = new long[INITIAL_CAPACITY];
+        private int[][] docTerms = new int[INITIAL_CAPACITY][];
+        private final BitSet deleted = new BitSet();
+        private int docCount;
+        private int deletedCount;
+        private long totalLength;
+
+        int liveDocs() {
+            return docCount - deletedCount;
+        }
+
+        long postingCount() {
+            long count = 0;
+            for (int t = 0; t < termCount; t++) {
+                count += postings[t].size;
+            }
+            return count;
+        }
+
+        List<Match> search(Set<String> terms, int limit, Scores scores) {
+            int liveDocs = liveDocs();
+            if (liveDocs == 0) {
+                return List.of();
+            }
+            float averageLength = (float) totalLength / liveDocs;
+            scores.ensureCapacity(docCount);
+            for (String term : terms) {
+                Integer termId = termIds.get(term);
+                if (termId == null || docFrequency[termId] == 0) {
+                    continue;
+                }
+                int df = docFrequency[termId];
+                float idf = (float) Math.log(1 + (liveDocs - df + 0.5) / (df + 0.5));
+                Postings list = postings[termId];
+                for (int i = 0; i < list.size; i++) {
+                    int doc = list.docs[i];
+                    if (deleted.get(doc)) {
+                        continue;
+                    }
+                    int tf = list.frequencies[i];
+                    float norm = K1 * (1 - B + B * docLengths[doc] / averageLength);
+                    scores.add(doc, idf * tf * (K1 + 1) / (tf + norm));
+                }
+            }
+            return topK(scores, limit);
+        }
+
+        private List<Match> topK(Scores scores, int limit) {
+            // минимальная куча из limit лучших: корень - худший из отобранных
+            PriorityQueue<Integer> best = new PriorityQueue<>(Math.min(limit, scores.touchedCount) + 1,
+                    (a, b) -> Float.compare(scores.values[a], scores.values[b]));
+            for (int i = 0; i < scores.touchedCount; i++) {
+                int doc = scores.touched[i];
+                if (best.size() < limit) {
+                    best.add(doc);
+                } else if (scores.values[doc] > scores.values[best.peek()]) {
+                    best.poll();
+                    best.add(doc);
+                }
+            }
+            Match[] matches = new Match[best.size()];
+            for (int i = matches.length - 1; i >= 0; i--) {
+                int doc = best.poll();
+                matches[i] = new Match(reviewIds[doc], scores.values[doc]);
+            }
+            return Arrays.asList(matches);
+        }
+
+        void apply(ReviewChanged event, RecentDeletions deletions) {
+            if (event.getDeleted()) {
+                apply(event.getId(), event.getVersion(), null, null, true, deletions);
+            } else {
+                apply(event.getId(), event.getVersion(),
+                        event.getReview().getClient(), event.getReview().getComment(), false, deletions);
+            }
+            if (deletedCount >= MIN_DELETED_TO_COMPACT && deletedCount > docCount - deletedCount) {
+                compact();
+            }
+        }
+
+        void apply(String reviewId, long version, String client, String comment, boolean removed,
+                   RecentDeletions deletions) {
+            Integer doc = docIds.get(reviewId);
+            boolean stale = doc != null ? docVersions[doc] >= version : deletions.covers(reviewId, version);
+            if (stale) {
+                return;
+            }
+            remove(reviewId);
+            if (removed) {
+                deletions.put(reviewId, version);
+            } else {
+                add(reviewId, version, client, comment);
+            }
+        }
+
+        /**
+         * Документ создаётся и для отзыва без слов: по нему хранится версия.
+         */
+        private void add(String reviewId, long version, String client, String comment) {
+            Map<String, Integer> frequencies = tokenize(comment);
+            int length = frequencies.values().stream().mapToInt(Integer::intValue).sum();
+            for (Map.Entry<String, Integer> entry : tokenize(client).entrySet()) {
+                frequencies.merge(entry.getKey(), entry.getValue(), Integer::sum);
+                length += entry.getValue();
+            }
+
+            int doc = docCount++;
+            if (doc == reviewIds.length) {
+                int capacity = reviewIds.length * 2;
+                reviewIds = Arrays.copyOf(reviewIds, capacity);
+                docLengths = Arrays.copyOf(docLengths, capacity);
+                docVersions = Arrays.copyOf(docVersions, capacity);
+                docTerms = Arrays.copyOf(docTerms, capacity);
+            }
+            int[] terms = new int[frequencies.size()];
+            int n = 0;
+            for (Map.Entry<String, Integer> entry : frequencies.entrySet()) {
+                int termId = termId(entry.getKey());
+                postings[termId].add(doc, entry.getValue());
+                docFrequency[termId]++;
+                terms[n++] = termId;
+            }
+            reviewIds[doc] = reviewId;
+            docLengths[doc] = length;
+            docVersions[doc] = version;
+            docTerms[doc] = terms;
+            docIds.put(reviewId, doc);
+            totalLength += length;
+        }
+
+        private void remove(String reviewId) {
+            Integer doc = reviewId == null ? null : docIds.remove(reviewId);
+            if (doc == null) {
+                return;
+            }
+            for (int termId : docTerms[doc]) {
+                docFrequency[termId]--;
+            }
+            totalLength -= docLengths[doc];
+            reviewIds[doc] = null;
+            docTerms[doc] = null;
+            deleted.set(doc);
+            deletedCount++;
+        }
+
+        private int termId(String term) {
+            Integer existing = termIds.get(term);
+            if (existing != null) {
+                return existing;
+            }
+            int termId = termCount++;
+            if (termId == postings.length) {
+                postings = Arrays.copyOf(postings, postings.length * 2);
+                docFrequency = Arrays.copyOf(docFrequency, docFrequency.length * 2);
+            }
+            postings[termId] = new Postings();
+            termIds.put(term, termId);
+            return termId;
+        }
+
+        /**
+         * Перенумерация живых документов подряд и удаление помеченных из списков вхождений.
+         * Номера сохраняют порядок, поэтому списки остаются отсортированными.
+         */
+        private void compact() {
+            int[] remap = new int[docCount];
+            int live = 0;
+            for (int doc = 0; doc < docCount; doc++) {
+                if (deleted.get(doc)) {
+                    remap[doc] = -1;
+                    continue;
+                }
+                remap[doc] = live;
+                reviewIds[live] = reviewIds[doc];
+                docLengths[live] = docLengths[doc];
+                docVersions[live] = docVersions[doc];
+                docTerms[live] = docTerms[doc];
+                docIds.put(reviewIds[live], live);
+                live++;
+            }
+            Arrays.fill(reviewIds, live, docCount, null);
+            Arrays.fill(docTerms, live, docCount, null);
+            for (int t = 0; t < termCount; t++) {
+                postings[t].remap(remap);
+            }
+            docCount = live;
+            deletedCount = 0;
+            deleted.clear();
+        }
+    }
+
+    /**
+     * Список вхождений термина: номера документов по возрастанию и частоты термина в них.
+     */
+    private static final class Postings {
+        int[] docs = new int[4];
+        int[] frequencies = new int[4];
+        int size;
+
+        void add(int doc, int frequency) {
+            if (size == docs.length) {
+                docs = Arrays.copyOf(docs, size * 2);
+                frequencies = Arrays.copyOf(frequencies, size * 2);
+            }
+            docs[size] = doc;
+            frequencies[size] = frequency;
+            size++;
+        }
+
+        void remap(int[] remap) {
+            int kept = 0;
+            for (int i = 0; i < size; i++) {
+                int doc = remap[docs[i]];
+                if (doc >= 0) {
+                    docs[kept] = doc;
+                    frequencies[kept] = frequencies[i];
+                    kept++;
+                }
+            }
+            size = kept;
+            if (size < docs.length / 4) {
+                docs = Arrays.copyOf(docs, Math.max(4, size * 2));
+                frequencies = Arrays.copyOf(frequencies, Math.max(4, size * 2));
+            }
+        }
+    }
+
+    /**
+     * Накопитель оценок запроса: значения по номеру документа и список затронутых номеров для сброса.
+     */
+    private static final class Scores {
+        float[] values = new float[0];
+        int[] touched = new int[64];
+        int touchedCount;
+
+        void ensureCapacity(int docs) {
+            if (values.length < docs) {
+                values = new float[Math.max(docs, values.length * 2)];
+            }
+        }
+
+        void add(int doc, float score) {
+            if (values[doc] == 0) {
+                if (touchedCount == touched.length) {
+                    touched = Arrays.copyOf(touched, touchedCount * 2);
+                }
+                touched[touchedCount++] = doc;
+            }
+            values[doc] += score;
+        }
+
+        void reset() {
+            for (int i = 0; i < touchedCount; i++) {
+                values[touched[i]] = 0;
+            }
+            touchedCount = 0;
+        }
+    }
+}
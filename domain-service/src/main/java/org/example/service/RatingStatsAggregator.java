@@ -0,0 +1,223 @@
+package org.example.service;
+
+import org.example.domainservice.ClientRatingStats;
+import org.example.domainservice.RatingStats;
+import org.example.domainservice.ReviewChanged;
+import org.example.models.Review;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Stream;
+
+/**
+ * Агрегаты оценок в памяти: гистограмма по значениям оценки и сумма/число отзывов по клиентам.
+ * Обновляются по событиям {@link ReviewChanged}, поэтому чтение не зависит от размера коллекции.
+ * Свои изменения экземпляр учитывает сразу, изменения других экземпляров domain-service -
+ * по событиям из reviewChangedExchange (см. ReviewChangedListener).
+ * <p>
+ * Для каждого отзыва хранятся версия и учтённые клиент и оценка: событие применяется, только если
+ * его версия новее учтённой, поэтому повторное и запоздавшее событие ничего не меняют.
+ * <p>
+ * Перестроение (при старте и после потоковой загрузки) считает агрегаты снимка MongoDB отдельно
+ * от текущих: статистика читается и события применяются к текущим. События, применённые за время
+ * чтения снимка, доприменяются к новым агрегатам, и те заменяют текущие. Замена убирает и
+ * расхождение из-за потерянных событий.
+ */
+@Component
+public class RatingStatsAggregator {
+    private static final Logger log = LoggerFactory.getLogger(RatingStatsAggregator.class);
+
+    // учтённое состояние отзыва
+    private record Rated(long version, String client, int rating) {
+    }
+
+    private final MongoTemplate mongoTemplate;
+    private final RecentDeletions deletions;
+    // события применяются под блокировкой чтения (агрегаты потокобезопасны), замена - под блокировкой записи
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private volatile Totals totals = new Totals();
+    // события, применённые за время перестроения; null - перестроения нет
+    private Queue<ReviewChanged> appliedDuringRebuild;
+
+    public RatingStatsAggregator(MongoTemplate mongoTemplate,
+                                 @Value("${review.changes.deleted-ttl-ms:300000}") long deletedTtlMs,
+                                 @Value("${review.changes.deleted-max:100000}") int deletedMax) {
+        this.mongoTemplate = mongoTemplate;
+        this.deletions = new RecentDeletions(deletedTtlMs, deletedMax);
+    }
+
+    /**
+     * Учёт изменения отзыва, если версия события новее учтённой.
+     */
+    public void apply(ReviewChanged event) {
+        lock.readLock().lock();
+        try {
+            totals.apply(event, deletions);
+            if (appliedDuringRebuild != null) {
+                appliedDuringRebuild.add(event);
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Перестроение по снимку коллекции. Блокировка записи держится только на время доприменения
+     * событий, пришедших во время чтения снимка, и замены агрегатов. Перестроения выполняются по одному.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public synchronized void rebuild() {
+        lock.writeLock().lock();
+        try {
+            appliedDuringRebuild = new ConcurrentLinkedQueue<>();
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        Totals rebuilt = new Totals();
+        Query query = new Query();
+        query.fields().include("client", "rating", "version");
+        try (Stream<Review> snapshot = mongoTemplate.stream(query, Review.class)) {
+            snapshot.forEach(review -> {
+                long version = review.getVersion() == null ? 0 : review.getVersion();
+                String client = review.getClient() == null ? "" : review.getClient();
+                rebuilt.apply(review.getId(), version, new Rated(version, client, review.getRating()), deletions);
+            });
+            lock.writeLock().lock();
+            try {
+                // события новее снимка; строки снимка той же или большей версии их отбрасывают
+                appliedDuringRebuild.forEach(event -> rebuilt.apply(event, deletions));
+                totals = rebuilt;
+            } finally {
+                appliedDuringRebuild = null;
+                lock.writeLock().unlock();
+            }
+        } catch (RuntimeException e) {
+            lock.writeLock().lock();
+            try {
+                appliedDuringRebuild = null;
+            } finally {
+                lock.writeLock().unlock();
+            }
+            throw e;
+        }
+        log.info("Rating stats rebuilt: {} reviews, {} clients", rebuilt.count.sum(), rebuilt.clients.size());
+    }
+
+    /**
+     * @param client клиент; пустой - все отзывы с гистограммой и разбивкой по клиентам.
+     */
+    public RatingStats snapshot(String client) {
+        Totals current = totals;
+        if (!client.isEmpty()) {
+            ClientTotals clientTotals = current.clients.get(client);
+            long clientCount = clientTotals == null ? 0 : clientTotals.count.sum();
+            double average = clientTotals == null ? 0 : average(clientTotals.sum.sum(), clientCount);
+            return RatingStats.newBuilder()
+                    .setCount(clientCount)
+                    .setAverage(average)
+                    .addClients(clientStats(client, clientTotals))
+                    .build();
+        }
+
+        long total = current.count.sum();
+        RatingStats.Builder stats = RatingStats.newBuilder()
+                .setCount(total)
+                .setAverage(average(current.ratingSum.sum(), total));
+        current.histogram.forEach((rating, reviews) -> {
+            long value = reviews.sum();
+            if (value > 0) {
+                stats.putHistogram(rating, value);
+            }
+        });
+        current.clients.forEach((name, clientTotals) -> {
+            if (clientTotals.count.sum() > 0) {
+                stats.addClients(clientStats(name, clientTotals));
+            }
+        });
+        return stats.build();
+    }
+
+    private static ClientRatingStats clientStats(String client, ClientTotals totals) {
+        long clientCount = totals == null ? 0 : totals.count.sum();
+        return ClientRatingStats.newBuilder()
+                .setClient(client)
+                .setCount(clientCount)
+                .setAverage(totals == null ? 0 : average(totals.sum.sum(), clientCount))
+                .build();
+    }
+
+    private static double average(long sum, long count) {
+        return count == 0 ? 0 : (double) sum / count;
+    }
+
+    /**
+     * Учтённые отзывы и агрегаты по ним.
+     */
+    private static final class Totals {
+        final Map<String, Rated> reviews = new ConcurrentHashMap<>();
+        final Map<Integer, LongAdder> histogram = new ConcurrentHashMap<>();
+        final Map<String, ClientTotals> clients = new ConcurrentHashMap<>();
+        final LongAdder count = new LongAdder();
+        final LongAdder ratingSum = new LongAdder();
+
+        void apply(ReviewChanged event, RecentDeletions deletions) {
+            if (event.getDeleted()) {
+                apply(event.getId(), event.getVersion(), null, deletions);
+            } else {
+                apply(event.getId(), event.getVersion(),
+                        new Rated(event.getVersion(), event.getReview().getClient(), event.getReview().getRating()),
+                        deletions);
+            }
+        }
+
+        /**
+         * @param state состояние после изменения; null - отзыв удалён.
+         */
+        void apply(String id, long version, Rated state, RecentDeletions deletions) {
+            reviews.compute(id, (key, current) -> {
+                boolean stale = current != null ? current.version() >= version : deletions.covers(id, version);
+                if (stale) {
+                    return current;
+                }
+                if (current != null) {
+                    add(current.client(), current.rating(), -1);
+                }
+                if (state == null) {
+                    deletions.put(id, version);
+                    return null;
+                }
+                add(state.client(), state.rating(), 1);
+                return state;
+            });
+        }
+
+        private void add(String client, int rating, long reviews) {
+            histogram.computeIfAbsent(rating, r -> new LongAdder()).add(reviews);
+            count.add(reviews);
+            ratingSum.add(rating * reviews);
+            ClientTotals totals = clients.computeIfAbsent(client == null ? "" : client, c -> new ClientTotals());
+            totals.count.add(reviews);
+            totals.sum.add(rating * reviews);
+        }
+    }
+
+    private static final class ClientTotals {
+        final LongAdder count = new LongAdder();
+        final LongAdder sum = new LongAdder();
+    }
+}
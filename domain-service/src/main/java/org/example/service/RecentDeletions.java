@@ -0,0 +1,51 @@
+package org.example.service;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Недавно удалённые отзывы и версии их удаления. Событие об изменении, пришедшее позже события
+ * об удалении, но с меньшей версией, не должно вернуть отзыв в агрегаты или индекс.
+ * Переупорядочивание событий ограничено временем доставки, поэтому отметки хранятся ограниченное
+ * время и в ограниченном числе; отзыв, созданный заново с тем же id (версия начинается с 0),
+ * учитывается после истечения отметки.
+ */
+final class RecentDeletions {
+
+    private record Deletion(long version, long atNanos) {
+    }
+
+    private final long ttlNanos;
+    private final int maxSize;
+    // порядок вставки совпадает с порядком по времени: устаревшие отметки в начале
+    private final LinkedHashMap<String, Deletion> deletions = new LinkedHashMap<>();
+
+    RecentDeletions(long ttlMillis, int maxSize) {
+        this.ttlNanos = ttlMillis * 1_000_000;
+        this.maxSize = maxSize;
+    }
+
+    synchronized void put(String id, long version) {
+        long now = System.nanoTime();
+        deletions.remove(id);
+        deletions.put(id, new Deletion(version, now));
+        Iterator<Map.Entry<String, Deletion>> eldest = deletions.entrySet().iterator();
+        while (eldest.hasNext()) {
+            Deletion deletion = eldest.next().getValue();
+            if (deletions.size() <= maxSize && now - deletion.atNanos() < ttlNanos) {
+                break;
+            }
+            eldest.remove();
+        }
+    }
+
+    /**
+     * @return true, если отзыв удалён с версией не меньше данной.
+     */
+    synchronized boolean covers(String id, long version) {
+        Deletion deletion = deletions.get(id);
+        return deletion != null && deletion.version() >= version
+                && System.nanoTime() - deletion.atNanos() < ttlNanos;
+    }
+}
@@ -1,5 +1,6 @@
 package org.example.service;
 
+import org.example.domainservice.ReviewCommand;
 import org.example.models.Review;
 import java.util.List;
 import java.util.Optional;
@@ -7,6 +8,10 @@ import java.util.Optional;
 public interface ReviewService {
     List<Review> getAllReviews();
     Optional<Review> getReviewById(String id);
-    Review saveReview(Review review);
-    void deleteReview(String id);
+    Review insertReview(Review review);
+    int insertReviews(List<Review> reviews);
+    void bulkInsertFinished(long inserted);
+    Optional<Review> updateReview(String id, String client, Integer rating, String comment, Long expectedVersion);
+    boolean deleteReview(String id);
+    void applyCommands(List<ReviewCommand> commands);
 }
@@ -1,22 +1,72 @@
 package org.example.service.serviceImpl;
 
+import com.mongodb.bulk.BulkWriteError;
+import org.bson.types.ObjectId;
+import org.example.domainservice.CreateReviewRequest;
+import org.example.domainservice.ReviewChanged;
+import org.example.domainservice.ReviewCommand;
+import org.example.domainservice.UpdateReviewRequest;
+import org.example.messaging.CommandDeadLetters;
+import org.example.messaging.ReviewChangePublisher;
+import org.example.messaging.ReviewCommands;
 import org.example.models.Review;
 import org.example.repository.ReviewRepository;
+import org.example.service.CommentSearchIndex;
+import org.example.service.RatingStatsAggregator;
 import org.example.service.ReviewService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.FindAndReplaceOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
 import org.springframework.stereotype.Service;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+import static org.springframework.data.mongodb.core.query.Query.query;
 
 @Service
 public class ReviewServiceImpl implements ReviewService {
+    private static final Logger log = LoggerFactory.getLogger(ReviewServiceImpl.class);
+
+    private static final int DUPLICATE_KEY = 11000;
 
     private final ReviewRepository reviewRepository;
+    private final MongoTemplate mongoTemplate;
+    private final ReviewChangePublisher changePublisher;
+    private final RatingStatsAggregator ratingStats;
+    private final CommentSearchIndex commentIndex;
+    private final CommandDeadLetters deadLetters;
 
     @Autowired
-    public ReviewServiceImpl(ReviewRepository reviewRepository) {
+    public ReviewServiceImpl(ReviewRepository reviewRepository,
+                             MongoTemplate mongoTemplate,
+                             ReviewChangePublisher changePublisher,
+                             RatingStatsAggregator ratingStats,
+                             CommentSearchIndex commentIndex,
+                             CommandDeadLetters deadLetters) {
         this.reviewRepository = reviewRepository;
+        this.mongoTemplate = mongoTemplate;
+        this.changePublisher = changePublisher;
+        this.ratingStats = ratingStats;
+        this.commentIndex = commentIndex;
+        this.deadLetters = deadLetters;
     }
 
     @Override
@@ -29,13 +79,325 @@ public class ReviewServiceImpl implements ReviewService {
         return reviewRepository.findById(id);
     }
 
+    /**
+     * Создание отзыва явным insert: без id его назначает MongoDB, повтор с тем же id
+     * возвращает существующий отзыв вместо ошибки дубликата.
+     *
+     * @return созданный отзыв или уже существующий с тем же id (повтор запроса).
+     */
+    @Override
+    public Review insertReview(Review review) {
+        review.setVersion(null);
+        try {
+            Review inserted = reviewRepository.insert(review);
+            publish(List.of(ReviewChangePublisher.changed(inserted)));
+            return inserted;
+        } catch (DuplicateKeyException e) {
+            // отзыв с этим id уже создан предыдущей попыткой
+            return reviewRepository.findById(review.getId()).orElse(review);
+        }
+    }
+
+    /**
+     * Вставка пачки отзывов одним неупорядоченным bulkWrite: отклонённая запись не останавливает
+     * остальные. Событий по отдельным отзывам нет - агрегаты и индекс этого экземпляра обновляются
+     * сразу, остальные получатели узнают о загрузке одним событием {@link #bulkInsertFinished}.
+     *
+     * @return число вставленных отзывов.
+     */
     @Override
-    public Review saveReview(Review review) {
-        return reviewRepository.save(review);
+    public int insertReviews(List<Review> reviews) {
+        if (reviews.isEmpty()) {
+            return 0;
+        }
+        for (Review review : reviews) {
+            if (review.getId() == null) {
+                review.setId(new ObjectId().toHexString());
+            }
+        }
+        Set<Integer> failed = new HashSet<>();
+        try {
+            mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, Review.class)
+                    .insert(reviews)
+                    .execute();
+        } catch (BulkOperationException e) {
+            e.getErrors().forEach(error -> failed.add(error.getIndex()));
+            log.warn("Bulk insert rejected {} of {} reviews, first error: {}",
+                    failed.size(), reviews.size(), e.getErrors().get(0).getMessage());
+        }
+        int inserted = 0;
+        for (int i = 0; i < reviews.size(); i++) {
+            if (!failed.contains(i)) {
+                applyLocally(ReviewChangePublisher.changed(reviews.get(i)));
+                inserted++;
+            }
+        }
+        return inserted;
     }
 
+    /**
+     * Одно событие о завершённой (или прерванной) потоковой загрузке, если что-то вставлено.
+     */
     @Override
-    public void deleteReview(String id) {
-        reviewRepository.deleteById(id);
+    public void bulkInsertFinished(long inserted) {
+        if (inserted > 0) {
+            changePublisher.publish(ReviewChangePublisher.bulkLoaded());
+        }
+    }
+
+    /**
+     * Обновление одним findAndModify: меняются только переданные поля и версия, прежнее состояние
+     * для итогового состояния в событии возвращает тот же запрос.
+     *
+     * @param client          новый клиент или null - не меняется.
+     * @param rating          новая оценка или null - не меняется.
+     * @param comment         новый текст или null - не меняется.
+     * @param expectedVersion версия, к которой применяется изменение, или null без проверки.
+     * @return состояние после обновления или пустой результат, если отзыва нет.
+     * @throws OptimisticLockingFailureException если отзыв уже изменён (версия не совпала).
+     */
+    @Override
+    public Optional<Review> updateReview(String id, String client, Integer rating, String comment,
+                                         Long expectedVersion) {
+        Criteria criteria = where("id").is(id);
+        if (expectedVersion != null) {
+            criteria = withVersion(criteria, expectedVersion);
+        }
+        Update update = new Update().inc("version", 1);
+        if (client != null) {
+            update.set("client", client);
+        }
+        if (rating != null) {
+            update.set("rating", rating);
+        }
+        if (comment != null) {
+            update.set("comment", comment);
+        }
+
+        Review before = mongoTemplate.findAndModify(query(criteria), update,
+                FindAndModifyOptions.options().returnNew(false), Review.class);
+        if (before == null) {
+            // второй запрос только при неудаче: отличить конфликт версий от отсутствия отзыва
+            if (expectedVersion != null && reviewRepository.existsById(id)) {
+                throw new OptimisticLockingFailureException(
+                        "Review " + id + " was modified, expected version " + expectedVersion);
+            }
+            return Optional.empty();
+        }
+
+        Review after = new Review(
+                client != null ? client : before.getClient(),
+                rating != null ? rating : before.getRating(),
+                comment != null ? comment : before.getComment());
+        after.setId(id);
+        after.setVersion(before.getVersion() == null ? 1 : before.getVersion() + 1);
+        publish(List.of(ReviewChangePublisher.changed(after)));
+        return Optional.of(after);
+    }
+
+    /**
+     * Удаление одним findAndRemove: версия удалённого документа нужна для события.
+     *
+     * @return false, если отзыва не было.
+     */
+    @Override
+    public boolean deleteReview(String id) {
+        Review before = mongoTemplate.findAndRemove(query(where("id").is(id)), Review.class);
+        if (before == null) {
+            return false;
+        }
+        publish(List.of(ReviewChangePublisher.deleted(before)));
+        return true;
+    }
+
+    /**
+     * Применяет пачку команд одним неупорядоченным bulkWrite. Команды одного отзыва сворачиваются
+     * в одну операцию с тем же итогом, что и при последовательном выполнении (см. {@link PendingWrite}),
+     * поэтому порядок операций внутри bulkWrite не влияет на результат.
+     * Повторная вставка отзыва с уже существующим id (повторная доставка команды) игнорируется;
+     * операция, отклонённая MongoDB по другой причине, откладывается в очередь отложенных команд,
+     * а остальная пачка применяется. Сбой записи целиком (нет связи, ошибка write concern) пробрасывается.
+     * После записи публикуется событие по каждой применённой операции и обновляются агрегаты оценок
+     * и индекс поиска по комментариям;
+     * прежние состояния изменяемых отзывов читаются одним запросом до записи, итоговые - одним после:
+     * событие несёт состояние документа вместе с его версией.
+     * Удаление выполняется с условием на прочитанную версию, чтобы версия события удаления была точной;
+     * отзыв, изменённый между чтением и записью (или не найденный при чтении), удаляется findAndRemove.
+     */
+    @Override
+    public void applyCommands(List<ReviewCommand> commands) {
+        Map<String, PendingWrite> writes = foldCommands(commands);
+        if (writes.isEmpty()) {
+            return;
+        }
+
+        Map<String, Review> existing = new HashMap<>();
+        List<String> changedIds = writes.values().stream()
+                .filter(write -> write.kind() != PendingWrite.Kind.INSERT)
+                .map(PendingWrite::id)
+                .toList();
+        if (!changedIds.isEmpty()) {
+            reviewRepository.findAllById(changedIds).forEach(review -> existing.put(review.getId(), review));
+        }
+
+        // операции в порядке bulkWrite: индекс ошибки указывает на операцию
+        List<PendingWrite> ordered = new ArrayList<>(writes.size());
+        BulkOperations bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, Review.class);
+        for (PendingWrite write : writes.values()) {
+            Review previous = existing.get(write.id());
+            Query byId = query(where("id").is(write.id()));
+            switch (write.kind()) {
+                case INSERT -> bulk.insert(write.review());
+                case UPSERT -> bulk.upsert(byId, new Update()
+                        .set("client", write.review().getClient())
+                        .set("rating", write.review().getRating())
+                        .set("comment", write.review().getComment())
+                        .inc("version", 1));
+                case REPLACE -> {
+                    // версия продолжает версию удалённого документа
+                    write.review().setVersion(previous == null ? 0 : versionOf(previous) + 1);
+                    bulk.replaceOne(byId, write.review(), FindAndReplaceOptions.options().upsert());
+                }
+                case DELETE -> {
+                    if (previous == null) {
+                        continue;
+                    }
+                    bulk.remove(query(withVersion(where("id").is(write.id()), versionOf(previous))));
+                }
+            }
+            ordered.add(write);
+        }
+        Set<Integer> skipped = new HashSet<>();
+        try {
+            if (!ordered.isEmpty()) {
+                bulk.execute();
+            }
+        } catch (BulkOperationException e) {
+            if (e.getErrors().isEmpty()) {
+                throw e;
+            }
+            for (BulkWriteError error : e.getErrors()) {
+                skipped.add(error.getIndex());
+                // повторно вставленные отзывы не изменились - событий по ним нет
+                if (error.getCode() != DUPLICATE_KEY) {
+                    String reason = "MongoDB error " + error.getCode() + ": " + error.getMessage();
+                    ordered.get(error.getIndex()).sources().forEach(command -> deadLetters.park(command, reason));
+                }
+            }
+        }
+
+        List<PendingWrite> done = new ArrayList<>(writes.size());
+        for (int i = 0; i < ordered.size(); i++) {
+            if (!skipped.contains(i)) {
+                done.add(ordered.get(i));
+            }
+        }
+        // удаления отзывов, не найденных при чтении, в bulkWrite не попали
+        writes.values().stream()
+                .filter(write -> write.kind() == PendingWrite.Kind.DELETE && !existing.containsKey(write.id()))
+                .forEach(done::add);
+
+        Map<String, Review> current = new HashMap<>();
+        reviewRepository.findAllById(done.stream().map(PendingWrite::id).toList())
+                .forEach(review -> current.put(review.getId(), review));
+
+        List<ReviewChanged> applied = new ArrayList<>(done.size());
+        for (PendingWrite write : done) {
+            Review after = current.get(write.id());
+            if (write.kind() == PendingWrite.Kind.DELETE) {
+                Review removed = existing.get(write.id());
+                if (after != null || removed == null) {
+                    // версия изменилась после чтения: удаление по фактическому состоянию
+                    removed = mongoTemplate.findAndRemove(query(where("id").is(write.id())), Review.class);
+                }
+                if (removed != null) {
+                    applied.add(ReviewChangePublisher.deleted(removed));
+                }
+            } else if (after != null) {
+                // отсутствующий отзыв уже удалён другим запросом, событие опубликовал он
+                applied.add(ReviewChangePublisher.changed(after));
+            }
+        }
+        publish(applied);
+    }
+
+    /**
+     * Команды пачки, свёрнутые по отзывам, в порядке первой команды каждого отзыва.
+     */
+    static Map<String, PendingWrite> foldCommands(List<ReviewCommand> commands) {
+        Map<String, PendingWrite> writes = new LinkedHashMap<>();
+        for (ReviewCommand command : commands) {
+            String id = ReviewCommands.targetId(command);
+            if (!id.isEmpty()) {
+                writes.put(id, PendingWrite.fold(writes.get(id), command, id));
+            }
+        }
+        return writes;
+    }
+
+    /**
+     * Агрегаты и индекс этого экземпляра обновляются сразу, остальных - по опубликованным событиям.
+     */
+    private void publish(List<ReviewChanged> events) {
+        events.forEach(this::applyLocally);
+        changePublisher.publish(events);
+    }
+
+    private void applyLocally(ReviewChanged event) {
+        ratingStats.apply(event);
+        commentIndex.apply(event);
+    }
+
+    // документы без поля version считаются версией 0
+    private static long versionOf(Review review) {
+        return review.getVersion() == null ? 0 : review.getVersion();
+    }
+
+    private static Criteria withVersion(Criteria criteria, long version) {
+        return version == 0
+                ? criteria.and("version").in(0L, null)
+                : criteria.and("version").is(version);
+    }
+
+    /**
+     * Итог команд пачки для одного отзыва. UPDATE перезаписывает все поля (с upsert) и поэтому заменяет
+     * любую предыдущую операцию, DELETE - тоже. CREATE после DELETE заменяет документ целиком;
+     * CREATE после CREATE или UPDATE ничего не меняет, как и повторная вставка существующего id.
+     *
+     * @param review  состояние после операции; null для DELETE.
+     * @param sources свёрнутые команды - откладываются все, если MongoDB отклонила операцию.
+     */
+    record PendingWrite(String id, Kind kind, Review review, List<ReviewCommand> sources) {
+
+        enum Kind {INSERT, UPSERT, REPLACE, DELETE}
+
+        static PendingWrite fold(PendingWrite previous, ReviewCommand command, String id) {
+            List<ReviewCommand> sources = previous == null ? new ArrayList<>(1) : previous.sources();
+            sources.add(command);
+            return switch (command.getCommandCase()) {
+                case CREATE -> {
+                    if (previous == null) {
+                        yield new PendingWrite(id, Kind.INSERT, toReview(command.getCreate(), id), sources);
+                    }
+                    if (previous.kind() == Kind.DELETE) {
+                        yield new PendingWrite(id, Kind.REPLACE, toReview(command.getCreate(), id), sources);
+                    }
+                    yield previous;
+                }
+                case UPDATE -> {
+                    UpdateReviewRequest update = command.getUpdate();
+                    Review review = new Review(update.getClient(), update.getRating(), update.getComment());
+                    review.setId(id);
+                    yield new PendingWrite(id, Kind.UPSERT, review, sources);
+                }
+                default -> new PendingWrite(id, Kind.DELETE, null, sources);
+            };
+        }
+    }
+
+    private static Review toReview(CreateReviewRequest create, String id) {
+        Review review = new Review(create.getClient(), create.getRating(), create.getComment());
+        review.setId(id);
+        return review;
     }
 }
@@ -0,0 +1,237 @@
+package org.example.service;
+
+import junit.framework.TestCase;
+import org.example.domainservice.ReviewChanged;
+import org.example.domainservice.ReviewResponse;
+import org.example.models.Review;
+import org.example.repository.ReviewRepository;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Stream;
+
+/**
+ * Токенизация, ранжирование BM25 и применение изменений в {@link CommentSearchIndex}.
+ */
+public class CommentSearchIndexTest extends TestCase {
+
+    private static final float K1 = 1.2f;
+    private static final float B = 0.75f;
+    private static final float DELTA = 1e-5f;
+
+    private CommentSearchIndex index;
+
+    @Override
+    protected void setUp() {
+        index = newIndex(null);
+    }
+
+    public void testTokenizeLowercasesAndCountsWords() {
+        assertEquals(Map.of("кофе", 2, "coffee", 1, "2go", 1, "x", 1),
+                CommentSearchIndex.tokenize("Кофе, КОФЕ! coffee-2go  x"));
+        assertEquals(Map.of(), CommentSearchIndex.tokenize(" ,.!? "));
+        assertEquals(Map.of(), CommentSearchIndex.tokenize(null));
+    }
+
+    public void testEmptyQueryOrLimitFindsNothing() {
+        index.apply(changed("r1", 1, "anna", "кофе"));
+
+        assertEquals(List.of(), index.search(" !? ", 10));
+        assertEquals(List.of(), index.search("кофе", 0));
+        assertEquals(List.of(), index.search("чай", 10));
+    }
+
+    public void testBm25Scores() {
+        indexCoffeeAndTea();
+
+        List<CommentSearchIndex.Match> matches = index.search("КОФЕ", 10);
+
+        // 3 документа длиной 3, 4 и 2; "кофе" в r1 один раз, в r2 дважды
+        float idf = idf(3, 2);
+        assertEquals(List.of("r2", "r1"), ids(matches));
+        assertEquals(idf * bm25(2, 4, 3), matches.get(0).score(), DELTA);
+        assertEquals(idf * bm25(1, 3, 3), matches.get(1).score(), DELTA);
+    }
+
+    public void testRareTermOutranksCommonTerm() {
+        indexCoffeeAndTea();
+
+        List<CommentSearchIndex.Match> matches = index.search("кофе чай", 10);
+
+        assertEquals(List.of("r3", "r2", "r1"), ids(matches));
+    }
+
+    public void testDocumentMatchingMoreTermsRanksFirst() {
+        index.apply(changed("r1", 1, "anna", "кофе и круассан"));
+        index.apply(changed("r2", 1, "boris", "кофе и чай"));
+        index.apply(changed("r3", 1, "vera", "круассан и сок"));
+
+        assertEquals("r1", index.search("кофе круассан", 10).get(0).reviewId());
+    }
+
+    public void testClientIsIndexed() {
+        indexCoffeeAndTea();
+
+        assertEquals(List.of("r2"), ids(index.search("Boris", 10)));
+    }
+
+    public void testLimitKeepsBestInDescendingOrder() {
+        for (int i = 1; i <= 50; i++) {
+            // чем больше повторов слова при той же длине, тем выше оценка
+            index.apply(changed("r" + i, 1, "c", ("кофе ".repeat(i) + "сок ".repeat(60 - i)).trim()));
+        }
+
+        List<CommentSearchIndex.Match> matches = index.search("кофе", 10);
+
+        assertEquals(10, matches.size());
+        for (int i = 0; i < matches.size(); i++) {
+            assertEquals("r" + (50 - i), matches.get(i).reviewId());
+            if (i > 0) {
+                assertTrue(matches.get(i - 1).score() > matches.get(i).score());
+            }
+        }
+    }
+
+    public void testDeletedReviewIsNotFoundAndStatisticsFollow() {
+        indexCoffeeAndTea();
+
+        index.apply(deleted("r2", 2));
+        List<CommentSearchIndex.Match> matches = index.search("кофе", 10);
+
+        // остались r1 (длина 3) и r3 (длина 2)
+        assertEquals(List.of("r1"), ids(matches));
+        assertEquals(idf(2, 1) * bm25(1, 3, 2.5f), matches.get(0).score(), DELTA);
+    }
+
+    public void testLateEventDoesNotReviveDeletedReview() {
+        indexCoffeeAndTea();
+        index.apply(deleted("r2", 3));
+
+        index.apply(changed("r2", 2, "boris", "кофе"));
+        assertEquals(List.of("r1"), ids(index.search("кофе", 10)));
+
+        index.apply(changed("r2", 4, "boris", "кофе"));
+        assertEquals(2, index.search("кофе", 10).size());
+    }
+
+    public void testUpdateReplacesTerms() {
+        indexCoffeeAndTea();
+
+        index.apply(changed("r1", 2, "anna", "горячий чай"));
+
+        assertEquals(List.of("r2"), ids(index.search("кофе", 10)));
+        assertEquals(List.of("r1"), ids(index.search("горячий", 10)));
+        assertEquals(2, index.search("чай", 10).size());
+    }
+
+    public void testStaleOrRepeatedUpdateIsIgnored() {
+        indexCoffeeAndTea();
+        index.apply(changed("r1", 3, "anna", "латте"));
+
+        index.apply(changed("r1", 2, "anna", "раф"));
+        index.apply(changed("r1", 3, "anna", "раф"));
+
+        assertEquals(List.of(), index.search("раф", 10));
+        assertEquals(List.of("r1"), ids(index.search("латте", 10)));
+    }
+
+    public void testCompactionKeepsLiveReviews() {
+        for (int i = 0; i < 3000; i++) {
+            index.apply(changed("r" + i, 1, "c", "общее слово" + i));
+        }
+        // удалённых больше живых и не меньше 1024 - списки вхождений уплотняются
+        for (int i = 0; i < 2000; i++) {
+            index.apply(deleted("r" + i, 2));
+        }
+
+        assertEquals(1000, index.search("общее", 5000).size());
+        assertEquals(List.of(), index.search("слово10", 10));
+        assertEquals(List.of("r2500"), ids(index.search("слово2500", 10)));
+        index.apply(changed("r3000", 1, "c", "слово2500"));
+        assertEquals(2, index.search("слово2500", 10).size());
+    }
+
+    public void testRebuildReplacesIndexAndKeepsConcurrentEvents() {
+        List<Review> snapshot = List.of(
+                review("r1", 1, "anna", "кофе вкусный"),
+                review("r2", 1, "boris", "кофе кофе холодный"));
+        AtomicBoolean applied = new AtomicBoolean();
+        // событие во время чтения снимка: изменение r1 новее строки снимка и новый r9
+        index = newIndex(() -> snapshot.stream().peek(row -> {
+            if (applied.compareAndSet(false, true)) {
+                index.apply(changed("r1", 5, "anna", "латте"));
+                index.apply(changed("r9", 1, "gleb", "латте"));
+            }
+        }));
+        // r3 удалён в MongoDB, событие об удалении потеряно
+        index.apply(changed("r3", 1, "vera", "чай"));
+
+        index.rebuild();
+
+        assertEquals(List.of(), index.search("чай", 10));
+        assertEquals(List.of("r2"), ids(index.search("кофе", 10)));
+        assertEquals(List.of("r1", "r9"), sorted(ids(index.search("латте", 10))));
+    }
+
+    private void indexCoffeeAndTea() {
+        index.apply(changed("r1", 1, "anna", "кофе вкусный"));
+        index.apply(changed("r2", 1, "boris", "кофе кофе холодный"));
+        index.apply(changed("r3", 1, "vera", "чай"));
+    }
+
+    private static CommentSearchIndex newIndex(Snapshot snapshot) {
+        ReviewRepository repository = (ReviewRepository) Proxy.newProxyInstance(
+                ReviewRepository.class.getClassLoader(), new Class<?>[]{ReviewRepository.class},
+                (proxy, method, args) -> {
+                    if (method.getName().equals("streamAllByOrderByIdAsc")) {
+                        return snapshot.stream();
+                    }
+                    throw new UnsupportedOperationException(method.getName());
+                });
+        return new CommentSearchIndex(repository, true, 1, 60_000, 1000);
+    }
+
+    private interface Snapshot {
+        Stream<Review> stream();
+    }
+
+    private static float idf(int docs, int docFrequency) {
+        return (float) Math.log(1 + (docs - docFrequency + 0.5) / (docFrequency + 0.5));
+    }
+
+    private static float bm25(int tf, int length, float averageLength) {
+        return tf * (K1 + 1) / (tf + K1 * (1 - B + B * length / averageLength));
+    }
+
+    private static ReviewChanged changed(String id, long version, String client, String comment) {
+        return ReviewChanged.newBuilder()
+                .setId(id)
+                .setVersion(version)
+                .setReview(ReviewResponse.newBuilder().setId(id).setClient(client).setComment(comment))
+                .build();
+    }
+
+    private static ReviewChanged deleted(String id, long version) {
+        return ReviewChanged.newBuilder().setId(id).setVersion(version).setDeleted(true).build();
+    }
+
+    private static Review review(String id, long version, String client, String comment) {
+        Review review = new Review(client, 5, comment);
+        review.setId(id);
+        review.setVersion(version);
+        return review;
+    }
+
+    private static List<String> ids(List<CommentSearchIndex.Match> matches) {
+        return matches.stream().map(CommentSearchIndex.Match::reviewId).toList();
+    }
+
+    private static List<String> sorted(List<String> ids) {
+        List<String> copy = new ArrayList<>(ids);
+        copy.sort(null);
+        return copy;
+    }
+}
@@ -0,0 +1,169 @@
+package org.example.service;
+
+import junit.framework.TestCase;
+import org.example.domainservice.ClientRatingStats;
+import org.example.domainservice.RatingStats;
+import org.example.domainservice.ReviewChanged;
+import org.example.domainservice.ReviewResponse;
+import org.example.models.Review;
+import org.springframework.data.mongodb.MongoDatabaseFactory;
+import org.springframework.data.mongodb.core.MongoExceptionTranslator;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+
+import java.lang.reflect.Proxy;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+/**
+ * Проверка версий событий в {@link RatingStatsAggregator}: повторное, запоздавшее и устаревшее
+ * событие не меняют агрегаты, перестроение заменяет их снимком MongoDB.
+ */
+public class RatingStatsAggregatorTest extends TestCase {
+
+    private RatingStatsAggregator stats;
+
+    @Override
+    protected void setUp() {
+        stats = newAggregator(Stream::empty);
+    }
+
+    public void testEventsAreCounted() {
+        stats.apply(changed("r1", 1, "anna", 5));
+        stats.apply(changed("r2", 1, "anna", 3));
+        stats.apply(changed("r3", 1, "boris", 4));
+
+        RatingStats all = stats.snapshot("");
+        assertEquals(3, all.getCount());
+        assertEquals(4.0, all.getAverage(), 1e-9);
+        assertEquals(Map.of(3, 1L, 4, 1L, 5, 1L), all.getHistogramMap());
+        assertClient(stats.snapshot("anna"), "anna", 2, 4.0);
+        assertClient(stats.snapshot("boris"), "boris", 1, 4.0);
+    }
+
+    public void testUpdateMovesRatingAndClient() {
+        stats.apply(changed("r1", 1, "anna", 5));
+
+        stats.apply(changed("r1", 2, "boris", 2));
+
+        RatingStats all = stats.snapshot("");
+        assertEquals(1, all.getCount());
+        assertEquals(Map.of(2, 1L), all.getHistogramMap());
+        assertEquals(List.of("boris"), all.getClientsList().stream().map(ClientRatingStats::getClient).toList());
+        assertClient(stats.snapshot("anna"), "anna", 0, 0);
+        assertClient(stats.snapshot("boris"), "boris", 1, 2.0);
+    }
+
+    public void testRepeatedOrStaleEventIsIgnored() {
+        stats.apply(changed("r1", 2, "anna", 5));
+
+        stats.apply(changed("r1", 2, "anna", 5));
+        stats.apply(changed("r1", 1, "anna", 1));
+
+        RatingStats all = stats.snapshot("");
+        assertEquals(1, all.getCount());
+        assertEquals(Map.of(5, 1L), all.getHistogramMap());
+    }
+
+    public void testLateEventDoesNotReviveDeletedReview() {
+        stats.apply(changed("r1", 1, "anna", 5));
+        stats.apply(deleted("r1", 3));
+        assertEquals(0, stats.snapshot("").getCount());
+
+        stats.apply(changed("r1", 2, "anna", 4));
+        assertEquals(0, stats.snapshot("").getCount());
+
+        stats.apply(changed("r1", 4, "anna", 4));
+        assertEquals(Map.of(4, 1L), stats.snapshot("").getHistogramMap());
+    }
+
+    public void testDeleteBeforeCreateKeepsReviewOut() {
+        // удаление обогнало создание: создание со старой версией не учитывается
+        stats.apply(deleted("r1", 2));
+        stats.apply(changed("r1", 1, "anna", 5));
+
+        assertEquals(0, stats.snapshot("").getCount());
+    }
+
+    public void testUnknownClientHasZeroStats() {
+        stats.apply(changed("r1", 1, "anna", 5));
+
+        RatingStats unknown = stats.snapshot("vera");
+        assertEquals(0, unknown.getCount());
+        assertEquals(0.0, unknown.getAverage());
+        assertTrue(unknown.getHistogramMap().isEmpty());
+    }
+
+    public void testRebuildReplacesTotalsAndKeepsConcurrentEvents() {
+        AtomicBoolean applied = new AtomicBoolean();
+        stats = newAggregator(() -> Stream.of(
+                review("r1", 1, "anna", 5),
+                review("r2", 1, "boris", 3)).peek(row -> {
+            // события во время чтения снимка: изменение r1 новее строки снимка и новый r9
+            if (applied.compareAndSet(false, true)) {
+                stats.apply(changed("r1", 5, "anna", 1));
+                stats.apply(changed("r9", 1, "gleb", 4));
+            }
+        }));
+        // r3 удалён в MongoDB, событие об удалении потеряно
+        stats.apply(changed("r3", 1, "vera", 2));
+
+        stats.rebuild();
+
+        RatingStats all = stats.snapshot("");
+        assertEquals(3, all.getCount());
+        assertEquals(Map.of(1, 1L, 3, 1L, 4, 1L), all.getHistogramMap());
+        assertClient(stats.snapshot("vera"), "vera", 0, 0);
+        assertClient(stats.snapshot("anna"), "anna", 1, 1.0);
+    }
+
+    private RatingStatsAggregator newAggregator(Supplier<Stream<Review>> snapshot) {
+        // без MongoDB: снимок отдаёт stream, других запросов нет
+        MongoDatabaseFactory factory = (MongoDatabaseFactory) Proxy.newProxyInstance(
+                MongoDatabaseFactory.class.getClassLoader(), new Class<?>[]{MongoDatabaseFactory.class},
+                (proxy, method, args) -> {
+                    if (method.getName().equals("getExceptionTranslator")) {
+                        return new MongoExceptionTranslator();
+                    }
+                    throw new UnsupportedOperationException(method.getName());
+                });
+        MongoTemplate mongoTemplate = new MongoTemplate(factory) {
+            @Override
+            @SuppressWarnings("unchecked")
+            public <T> Stream<T> stream(Query query, Class<T> entityType) {
+                return (Stream<T>) snapshot.get();
+            }
+        };
+        return new RatingStatsAggregator(mongoTemplate, 60_000, 1000);
+    }
+
+    private static void assertClient(RatingStats stats, String client, long count, double average) {
+        assertEquals(count, stats.getCount());
+        assertEquals(average, stats.getAverage(), 1e-9);
+        assertEquals(1, stats.getClientsCount());
+        assertEquals(client, stats.getClients(0).getClient());
+        assertEquals(count, stats.getClients(0).getCount());
+    }
+
+    private static ReviewChanged changed(String id, long version, String client, int rating) {
+        return ReviewChanged.newBuilder()
+                .setId(id)
+                .setVersion(version)
+                .setReview(ReviewResponse.newBuilder().setId(id).setClient(client).setRating(rating))
+                .build();
+    }
+
+    private static ReviewChanged deleted(String id, long version) {
+        return ReviewChanged.newBuilder().setId(id).setVersion(version).setDeleted(true).build();
+    }
+
+    private static Review review(String id, long version, String client, int rating) {
+        Review review = new Review(client, rating, "");
+        review.setId(id);
+        review.setVersion(version);
+        return review;
+    }
+}
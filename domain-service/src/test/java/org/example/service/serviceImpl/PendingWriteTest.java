@@ -0,0 +1,143 @@
+package org.example.service.serviceImpl;
+
+import junit.framework.TestCase;
+import org.example.domainservice.CreateReviewRequest;
+import org.example.domainservice.DeleteReviewRequest;
+import org.example.domainservice.ReviewCommand;
+import org.example.domainservice.UpdateReviewRequest;
+import org.example.messaging.ReviewCommands;
+import org.example.service.serviceImpl.ReviewServiceImpl.PendingWrite;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Свёртка команд пачки по отзывам ({@link ReviewServiceImpl#foldCommands}): итог должен совпадать
+ * с последовательным выполнением команд.
+ */
+public class PendingWriteTest extends TestCase {
+
+    private static final String ID = "65a000000000000000000001";
+
+    public void testCreateIsInsert() {
+        PendingWrite write = single(create(ID, "anna", 5));
+
+        assertEquals(PendingWrite.Kind.INSERT, write.kind());
+        assertEquals(ID, write.review().getId());
+        assertEquals("anna", write.review().getClient());
+        assertEquals(5, write.review().getRating());
+    }
+
+    public void testDeleteThenCreateReplaces() {
+        PendingWrite write = single(delete(ID), create(ID, "anna", 4));
+
+        assertEquals(PendingWrite.Kind.REPLACE, write.kind());
+        assertEquals("anna", write.review().getClient());
+        assertEquals(4, write.review().getRating());
+        assertEquals(2, write.sources().size());
+    }
+
+    public void testCreateThenDeleteDeletes() {
+        PendingWrite write = single(create(ID, "anna", 4), delete(ID));
+
+        assertEquals(PendingWrite.Kind.DELETE, write.kind());
+        assertNull(write.review());
+    }
+
+    public void testRepeatedUpdateKeepsLast() {
+        PendingWrite write = single(update(ID, "anna", 2), update(ID, "boris", 3), update(ID, "boris", 5));
+
+        assertEquals(PendingWrite.Kind.UPSERT, write.kind());
+        assertEquals("boris", write.review().getClient());
+        assertEquals(5, write.review().getRating());
+        assertEquals(3, write.sources().size());
+    }
+
+    public void testUpdateAfterCreateUpserts() {
+        PendingWrite write = single(create(ID, "anna", 1), update(ID, "anna", 2));
+
+        assertEquals(PendingWrite.Kind.UPSERT, write.kind());
+        assertEquals(2, write.review().getRating());
+    }
+
+    public void testCreateAfterCreateOrUpdateChangesNothing() {
+        PendingWrite afterCreate = single(create(ID, "anna", 1), create(ID, "boris", 2));
+        assertEquals(PendingWrite.Kind.INSERT, afterCreate.kind());
+        assertEquals("anna", afterCreate.review().getClient());
+        assertEquals(2, afterCreate.sources().size());
+
+        PendingWrite afterUpdate = single(update(ID, "anna", 3), create(ID, "boris", 2));
+        assertEquals(PendingWrite.Kind.UPSERT, afterUpdate.kind());
+        assertEquals(3, afterUpdate.review().getRating());
+    }
+
+    public void testReviewsAreFoldedSeparatelyInFirstCommandOrder() {
+        String other = "65a000000000000000000002";
+        Map<String, PendingWrite> writes = ReviewServiceImpl.foldCommands(List.of(
+                update(other, "boris", 1), create(ID, "anna", 5), delete(other)));
+
+        assertEquals(List.of(other, ID), List.copyOf(writes.keySet()));
+        assertEquals(PendingWrite.Kind.DELETE, writes.get(other).kind());
+        assertEquals(PendingWrite.Kind.INSERT, writes.get(ID).kind());
+    }
+
+    public void testLegacyCreateIdIsDerivedFromMessageId() {
+        ReviewCommand legacy = legacyCreate("msg-1", "anna", 5);
+
+        String id = ReviewCommands.targetId(legacy);
+        assertEquals(24, id.length());
+        assertTrue(id, id.matches("[0-9a-f]{24}"));
+        assertEquals(id, ReviewCommands.targetId(legacyCreate("msg-1", "boris", 1)));
+        assertFalse(id.equals(ReviewCommands.targetId(legacyCreate("msg-2", "anna", 5))));
+    }
+
+    public void testRedeliveredLegacyCreateFoldsIntoOneInsert() {
+        Map<String, PendingWrite> writes = ReviewServiceImpl.foldCommands(List.of(
+                legacyCreate("msg-1", "anna", 5), legacyCreate("msg-1", "anna", 5)));
+
+        assertEquals(1, writes.size());
+        PendingWrite write = writes.values().iterator().next();
+        assertEquals(PendingWrite.Kind.INSERT, write.kind());
+        assertEquals(write.id(), write.review().getId());
+        assertEquals(2, write.sources().size());
+    }
+
+    public void testLegacyCreateWithoutMessageIdGetsFreshId() {
+        Map<String, PendingWrite> writes = ReviewServiceImpl.foldCommands(List.of(
+                legacyCreate("", "anna", 5), legacyCreate("", "anna", 5)));
+
+        assertEquals(2, writes.size());
+    }
+
+    private static PendingWrite single(ReviewCommand... commands) {
+        Map<String, PendingWrite> writes = ReviewServiceImpl.foldCommands(List.of(commands));
+        assertEquals(1, writes.size());
+        return writes.get(ID);
+    }
+
+    private static ReviewCommand create(String id, String client, int rating) {
+        return ReviewCommand.newBuilder()
+                .setMessageId("create-" + id)
+                .setCreate(CreateReviewRequest.newBuilder().setId(id).setClient(client).setRating(rating))
+                .build();
+    }
+
+    private static ReviewCommand legacyCreate(String messageId, String client, int rating) {
+        return ReviewCommand.newBuilder()
+                .setMessageId(messageId)
+                .setCreate(CreateReviewRequest.newBuilder().setClient(client).setRating(rating))
+                .build();
+    }
+
+    private static ReviewCommand update(String id, String client, int rating) {
+        return ReviewCommand.newBuilder()
+                .setUpdate(UpdateReviewRequest.newBuilder().setId(id).setClient(client).setRating(rating))
+                .build();
+    }
+
+    private static ReviewCommand delete(String id) {
+        return ReviewCommand.newBuilder()
+                .setDelete(DeleteReviewRequest.newBuilder().setId(id))
+                .build();
+    }
+}
@@ -0,0 +1,33 @@
+package org.example.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.example.service.AdaptiveConcurrencyLimiter;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Отдельные пределы для чтений (вызовы domain-service по gRPC) и записей (публикация команд в RabbitMQ):
+ * замедление одного пути не снижает пропускную способность другого.
+ */
+@Configuration
+public class ConcurrencyLimitConfig {
+
+    @Bean
+    public AdaptiveConcurrencyLimiter readLimiter(MeterRegistry meterRegistry,
+                                                  @Value("${concurrency.read.initial-limit}") int initialLimit,
+                                                  @Value("${concurrency.read.min-limit}") int minLimit,
+                                                  @Value("${concurrency.read.max-limit}") int maxLimit,
+                                                  @Value("${concurrency.retry-after-seconds}") long retryAfterSeconds) {
+        return new AdaptiveConcurrencyLimiter("read", initialLimit, minLimit, maxLimit, retryAfterSeconds, meterRegistry);
+    }
+
+    @Bean
+    public AdaptiveConcurrencyLimiter writeLimiter(MeterRegistry meterRegistry,
+                                                   @Value("${concurrency.write.initial-limit}") int initialLimit,
+                                                   @Value("${concurrency.write.min-limit}") int minLimit,
+                                                   @Value("${concurrency.write.max-limit}") int maxLimit,
+                                                   @Value("${concurrency.retry-after-seconds}") long retryAfterSeconds) {
+        return new AdaptiveConcurrencyLimiter("write", initialLimit, minLimit, maxLimit, retryAfterSeconds, meterRegistry);
+    }
+}
@@ -2,31 +2,220 @@ package org.example.config;
 
 import io.grpc.ManagedChannel;
 import io.grpc.ManagedChannelBuilder;
-
+import io.grpc.NameResolver;
+import io.grpc.NameResolverRegistry;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.example.domainservice.ReviewServiceGrpc;
+import org.example.grpc.ChannelPool;
+import org.example.grpc.EndpointMetricsInterceptor;
+import org.example.grpc.ServiceConfigNameResolverFactory;
+import org.example.grpc.StaticNameResolverProvider;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
 @Configuration
 public class GrpcClientConfig {
 
+    static {
+        NameResolverRegistry.getDefaultRegistry().register(new StaticNameResolverProvider());
+    }
+
     @Value("${grpc.server.host}")
     private String grpcServerHost;
 
     @Value("${grpc.server.port}")
     private int grpcServerPort;
 
+    // dns:///domain-service:9091 или static:///host1:9091,host2:9091; пустая - grpc.server.host:port
+    @Value("${grpc.server.target}")
+    private String grpcServerTarget;
+
+    @Value("${grpc.client.load-balancing-policy}")
+    private String loadBalancingPolicy;
+
+    @Value("${grpc.client.health-check.enabled}")
+    private boolean healthCheckEnabled;
+
+    @Value("${grpc.client.keepalive-time-ms}")
+    private long keepAliveTimeMs;
+
+    @Value("${grpc.client.keepalive-timeout-ms}")
+    private long keepAliveTimeoutMs;
+
+    @Value("${grpc.client.keepalive-without-calls}")
+    private boolean keepAliveWithoutCalls;
+
+    @Value("${grpc.client.channel-pool-size}")
+    private int channelPoolSize;
+
+    @Value("${grpc.client.hedging.enabled}")
+    private boolean hedgingEnabled;
+
+    @Value("${grpc.client.hedging.max-attempts}")
+    private int hedgingMaxAttempts;
+
+    @Value("${grpc.client.hedging.delay-ms}")
+    private long hedgingDelayMs;
+
+    @Value("${grpc.client.retry.max-attempts}")
+    private int retryMaxAttempts;
+
+    @Value("${grpc.client.retry.initial-backoff-ms}")
+    private long retryInitialBackoffMs;
+
+    @Value("${grpc.client.retry.max-backoff-ms}")
+    private long retryMaxBackoffMs;
+
+    @Value("${grpc.client.retry-throttling.max-tokens}")
+    private int throttlingMaxTokens;
+
+    @Value("${grpc.client.retry-throttling.token-ratio}")
+    private double throttlingTokenRatio;
+
+    @Value("${grpc.client.timeout.point-read-ms}")
+    private long pointReadTimeoutMs;
+
+    @Value("${grpc.client.timeout.read-ms}")
+    private long readTimeoutMs;
+
+    @Value("${grpc.client.timeout.write-ms}")
+    private long writeTimeoutMs;
+
+    /**
+     * Канал к domain-service: балансировка по всем адресам цели, проверка здоровья подсетей
+     * (экземпляр в NOT_SERVING не получает вызовов), keepalive для обнаружения обрывов соединения.
+     * При channel-pool-size больше 1 - пул каналов, у каждого свои соединения.
+     */
     @Bean
-    public ManagedChannel managedChannel() {
-        return ManagedChannelBuilder
-                .forAddress(grpcServerHost, grpcServerPort)
+    public ManagedChannel managedChannel(MeterRegistry meterRegistry) {
+        EndpointMetricsInterceptor metrics = new EndpointMetricsInterceptor(meterRegistry);
+        if (channelPoolSize <= 1) {
+            return buildChannel(metrics);
+        }
+
+        List<ManagedChannel> channels = new ArrayList<>(channelPoolSize);
+        for (int i = 0; i < channelPoolSize; i++) {
+            channels.add(buildChannel(metrics));
+        }
+        ChannelPool pool = new ChannelPool(channels);
+        for (int i = 0; i < pool.size(); i++) {
+            int index = i;
+            Gauge.builder("grpc.client.pool.outstanding", pool, p -> p.outstanding(index))
+                    .description("Unfinished calls per pooled channel")
+                    .tag("channel", String.valueOf(index))
+                    .register(meterRegistry);
+        }
+        return pool;
+    }
+
+    private ManagedChannel buildChannel(EndpointMetricsInterceptor metrics) {
+        String target = grpcServerTarget.isBlank() ? grpcServerHost + ":" + grpcServerPort : grpcServerTarget;
+        return buildChannel(ManagedChannelBuilder.forTarget(target),
+                NameResolverRegistry.getDefaultRegistry().asFactory(), metrics);
+    }
+
+    /**
+     * Настройки канала поверх построителя с уже заданной целью (в тестах - in-process).
+     * Service config отдаётся через резолвер, а не defaultServiceConfig: иначе канал
+     * не применяет retryThrottling (см. {@link ServiceConfigNameResolverFactory}).
+     */
+    @SuppressWarnings("deprecation")
+    ManagedChannel buildChannel(ManagedChannelBuilder<?> builder, NameResolver.Factory resolver,
+                                EndpointMetricsInterceptor metrics) {
+        return builder
+                .nameResolverFactory(new ServiceConfigNameResolverFactory(resolver, serviceConfig()))
                 .usePlaintext()
+                .keepAliveTime(keepAliveTimeMs, TimeUnit.MILLISECONDS)
+                .keepAliveTimeout(keepAliveTimeoutMs, TimeUnit.MILLISECONDS)
+                .keepAliveWithoutCalls(keepAliveWithoutCalls)
+                .enableRetry()
+                .intercept(metrics)
                 .build();
     }
 
+    private Map<String, Object> serviceConfig() {
+        Map<String, Object> config = new HashMap<>();
+        config.put("loadBalancingConfig", List.of(Map.of(loadBalancingPolicy, Map.of())));
+        if (healthCheckEnabled) {
+            // пустое имя - общее состояние сервера в grpc.health.v1.Health
+            config.put("healthCheckConfig", Map.of("serviceName", ""));
+        }
+
+        List<Map<String, Object>> methodConfig = new ArrayList<>();
+        // точечные чтения: при медленном ответе через hedging-delay уходит копия вызова,
+        // результат - первый ответ; остальные попытки отменяются
+        Map<String, Object> pointReads = methodConfig(pointReadTimeoutMs, "GetReview", "BatchGetReviews");
+        if (hedgingEnabled) {
+            pointReads.put("hedgingPolicy", Map.of(
+                    "maxAttempts", (double) hedgingMaxAttempts,
+                    "hedgingDelay", duration(hedgingDelayMs),
+                    "nonFatalStatusCodes", List.of("UNAVAILABLE")));
+        } else {
+            pointReads.put("retryPolicy", retryPolicy());
+        }
+        methodConfig.add(pointReads);
+        // остальные идемпотентные чтения повторяются с экспоненциальной задержкой
+        Map<String, Object> reads = methodConfig(readTimeoutMs,
+                "GetAllReviews", "SearchReviews", "SearchComments", "GetRatingStats");
+        reads.put("retryPolicy", retryPolicy());
+        methodConfig.add(reads);
+        // записи не повторяются: только дедлайн. StreamReviews и BulkCreateReviews без дедлайна
+        methodConfig.add(methodConfig(writeTimeoutMs, "CreateReview", "UpdateReview", "DeleteReview"));
+        config.put("methodConfig", methodConfig);
+
+        // повторы и копии разрешены, пока доля неудачных вызовов мала: при перегрузке
+        // domain-service жетоны заканчиваются и вызовы идут без повторов
+        config.put("retryThrottling", Map.of(
+                "maxTokens", (double) throttlingMaxTokens,
+                "tokenRatio", throttlingTokenRatio));
+        return config;
+    }
+
+    private static Map<String, Object> methodConfig(long timeoutMs, String... methods) {
+        List<Map<String, Object>> names = new ArrayList<>(methods.length);
+        for (String method : methods) {
+            names.add(Map.of("service", ReviewServiceGrpc.SERVICE_NAME, "method", method));
+        }
+        Map<String, Object> config = new HashMap<>();
+        config.put("name", names);
+        config.put("timeout", duration(timeoutMs));
+        return config;
+    }
+
+    private Map<String, Object> retryPolicy() {
+        return Map.of(
+                "maxAttempts", (double) retryMaxAttempts,
+                "initialBackoff", duration(retryInitialBackoffMs),
+                "maxBackoff", duration(retryMaxBackoffMs),
+                "backoffMultiplier", 2.0,
+                "retryableStatusCodes", List.of("UNAVAILABLE"));
+    }
+
+    private static String duration(long millis) {
+        return String.format(Locale.ROOT, "%.3fs", millis / 1000.0);
+    }
+
     @Bean
     public ReviewServiceGrpc.ReviewServiceBlockingStub reviewServiceStub(ManagedChannel channel) {
         return ReviewServiceGrpc.newBlockingStub(channel);
     }
+
+    @Bean
+    public ReviewServiceGrpc.ReviewServiceStub reviewServiceAsyncStub(ManagedChannel channel) {
+        return ReviewServiceGrpc.newStub(channel);
+    }
+
+    @Bean
+    public ReviewServiceGrpc.ReviewServiceFutureStub reviewServiceFutureStub(ManagedChannel channel) {
+        return ReviewServiceGrpc.newFutureStub(channel);
+    }
 }
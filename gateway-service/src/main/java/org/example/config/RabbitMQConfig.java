@@ -1,9 +1,11 @@
 package org.example.config;
 
+import org.example.messaging.ReviewCommandMessageConverter;
 import org.springframework.amqp.core.Binding;
 import org.springframework.amqp.core.BindingBuilder;
 import org.springframework.amqp.core.DirectExchange;
 import org.springframework.amqp.core.Queue;
+import org.springframework.amqp.support.converter.MessageConverter;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
@@ -24,4 +26,9 @@ public class RabbitMQConfig {
     public Binding binding(Queue queue, DirectExchange exchange) {
         return BindingBuilder.bind(queue).to(exchange).with("reviewRoutingKey");
     }
+
+    @Bean
+    public MessageConverter reviewCommandMessageConverter() {
+        return new ReviewCommandMessageConverter();
+    }
 }
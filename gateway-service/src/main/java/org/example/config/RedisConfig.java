@@ -4,15 +4,20 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.json.JsonMapper;
 import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
 import org.example.dto.ReviewDto;
+import org.example.service.CacheInvalidationListener;
+import org.example.service.RedisCacheService;
+import org.example.service.ReviewValueCodec;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.data.redis.connection.RedisConnectionFactory;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
 import org.springframework.data.redis.serializer.GenericJackson2JsonRedisSerializer;
+import org.springframework.data.redis.serializer.RedisSerializer;
 import org.springframework.data.redis.serializer.StringRedisSerializer;
 
-import java.util.List;
-
 @Configuration
 public class RedisConfig {
 
@@ -23,37 +28,43 @@ public class RedisConfig {
                 .build();
     }
 
+    /**
+     * Сериализатор значений отзывов. Запись - в protobuf (+LZ4 для больших значений) или в прежнем JSON,
+     * чтение - в любом из форматов, поэтому переключение в обе стороны не требует сброса кеша.
+     */
+    @Bean
+    public RedisSerializer<ReviewDto> reviewValueSerializer(ObjectMapper objectMapper,
+                                                            @Value("${cache.codec}") String codec,
+                                                            @Value("${cache.codec.compression-threshold-bytes}") int compressionThreshold) {
+        boolean writeProtobuf = switch (codec) {
+            case "protobuf" -> true;
+            case "json" -> false;
+            default -> throw new IllegalArgumentException("Unknown cache.codec: " + codec);
+        };
+        return new ReviewValueCodec(new GenericJackson2JsonRedisSerializer(objectMapper), compressionThreshold, writeProtobuf);
+    }
+
     @Bean
     public RedisTemplate<String, ReviewDto> redisTemplate(RedisConnectionFactory connectionFactory,
-                                                          ObjectMapper objectMapper) {
+                                                          RedisSerializer<ReviewDto> reviewValueSerializer) {
         RedisTemplate<String, ReviewDto> template = new RedisTemplate<>();
         template.setConnectionFactory(connectionFactory);
 
-        GenericJackson2JsonRedisSerializer jsonSerializer = new GenericJackson2JsonRedisSerializer(objectMapper);
-
         template.setKeySerializer(new StringRedisSerializer());
-        template.setValueSerializer(jsonSerializer);
+        template.setValueSerializer(reviewValueSerializer);
         template.setHashKeySerializer(new StringRedisSerializer());
-        template.setHashValueSerializer(jsonSerializer);
+        template.setHashValueSerializer(reviewValueSerializer);
 
         template.afterPropertiesSet();
         return template;
     }
 
     @Bean
-    public RedisTemplate<String, List<ReviewDto>> reviewListRedisTemplate(RedisConnectionFactory connectionFactory,
-                                                                          ObjectMapper objectMapper) {
-        RedisTemplate<String, List<ReviewDto>> template = new RedisTemplate<>();
-        template.setConnectionFactory(connectionFactory);
-
-        GenericJackson2JsonRedisSerializer jsonSerializer = new GenericJackson2JsonRedisSerializer(objectMapper);
-
-        template.setKeySerializer(new StringRedisSerializer());
-        template.setValueSerializer(jsonSerializer);
-        template.setHashKeySerializer(new StringRedisSerializer());
-        template.setHashValueSerializer(jsonSerializer);
-
-        template.afterPropertiesSet();
-        return template;
+    public RedisMessageListenerContainer cacheInvalidationListenerContainer(RedisConnectionFactory connectionFactory,
+                                                                           CacheInvalidationListener listener) {
+        RedisMessageListenerContainer container = new RedisMessageListenerContainer();
+        container.setConnectionFactory(connectionFactory);
+        container.addMessageListener(listener, new ChannelTopic(RedisCacheService.INVALIDATION_CHANNEL));
+        return container;
     }
 }
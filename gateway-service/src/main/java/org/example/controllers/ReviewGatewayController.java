@@ -1,16 +1,64 @@
 package org.example.controllers;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SequenceWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.google.common.collect.Lists;
+import io.grpc.Status;
+import org.example.domainservice.ReviewCommand;
+import org.example.domainservice.ReviewResponse;
+import org.example.dto.BulkImportResultDto;
+import org.example.dto.CommentMatchDto;
 import org.example.dto.NewReviewRequest;
+import org.example.dto.RatingStatsDto;
 import org.example.dto.ReviewDto;
+import org.example.dto.ReviewPageDto;
 import org.example.grpc.ReviewGrpcClient;
+import org.example.messaging.ReviewCommands;
 import org.example.service.RabbitMQSender;
+import org.example.service.LimitExceededException;
 import org.example.service.RedisCacheService;
+import org.example.service.ReviewIdFilter;
+import org.example.service.SingleFlight;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.core.io.InputStreamResource;
+import org.springframework.core.io.Resource;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+import java.util.zip.GZIPOutputStream;
 
 @RestController
 @RequestMapping("/api/reviews")
@@ -19,107 +67,942 @@ public class ReviewGatewayController {
     private final ReviewGrpcClient reviewGrpcClient;
     private final RabbitMQSender rabbitMQSender;
     private final RedisCacheService cacheService;
+    private final ObjectMapper objectMapper;
+    private final ObjectWriter reviewArrayWriter;
+    private final SingleFlight singleFlight;
+    private final ReviewIdFilter reviewIdFilter;
+    // индекс списка на экземпляре строит не больше одного обхода страниц
+    private final AtomicBoolean buildingIndex = new AtomicBoolean();
 
     private static final Logger log = LoggerFactory.getLogger(ReviewGatewayController.class);
+    private static final int MAX_PAGE_SIZE = 1000;
+    private static final int DEFAULT_SEARCH_PAGE_SIZE = 100;
+    private static final String APPLICATION_NDJSON = "application/x-ndjson";
+    private static final int STREAM_FLUSH_EVERY = 500;
+    // ID из индекса списка, тела которых читаются из кеша одним конвейером при записи GET /api/reviews
+    private static final int LIST_WRITE_CHUNK = 500;
+    private static final String GZIP = "gzip";
 
     public ReviewGatewayController(ReviewGrpcClient reviewGrpcClient,
                                    RabbitMQSender rabbitMQSender,
-                                   RedisCacheService cacheService) {
+                                   RedisCacheService cacheService,
+                                   ObjectMapper objectMapper,
+                                   SingleFlight singleFlight,
+                                   ReviewIdFilter reviewIdFilter) {
         this.reviewGrpcClient = reviewGrpcClient;
         this.rabbitMQSender = rabbitMQSender;
         this.cacheService = cacheService;
+        this.objectMapper = objectMapper;
+        // сброс (и SYNC_FLUSH gzip) - на отправке части, а не после каждого отзыва
+        this.reviewArrayWriter = objectMapper.writerFor(ReviewDto.class)
+                .without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+        this.singleFlight = singleFlight;
+        this.reviewIdFilter = reviewIdFilter;
     }
 
+    /**
+     * Отзыв по ID. С If-None-Match ETag сравнивается до чтения тела: при совпадении - 304
+     * без обращения к телу в кеше и к domain-service.
+     */
     @GetMapping("/{id}")
-    public ResponseEntity<ReviewDto> getReviewById(@PathVariable String id) {
+    public CompletableFuture<ResponseEntity<ReviewDto>> getReviewById(@PathVariable String id,
+                                                                      @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
         log.info("Получение отзыва с ID: {}", id);
+        String key = RedisCacheService.reviewKey(id);
+
+        if (!reviewIdFilter.mightExist(id)) {
+            log.info("Отзыв с ID: {} отсутствует в фильтре Блума", id);
+            return CompletableFuture.completedFuture(ResponseEntity.notFound().build());
+        }
+
+        if (ifNoneMatch != null) {
+            String etag = cacheService.getReviewEtag(id);
+            if (etagMatches(ifNoneMatch, etag)) {
+                log.info("NOT MODIFIED - Отзыв с ID: {} не изменился", id);
+                return CompletableFuture.completedFuture(notModified(etag));
+            }
+        }
 
         ReviewDto cachedReview = cacheService.getCachedReview(id);
         if (cachedReview != null) {
             log.info("CACHE HIT - Возвращен отзыв с ID: {} из Redis", id);
-            return ResponseEntity.ok(cachedReview);
+            refreshEarlyIfDue(key, () -> loadReview(id));
+            return CompletableFuture.completedFuture(reviewResponse(cachedReview, ifNoneMatch));
+        }
+        if (cacheService.isKnownMissing(id)) {
+            return CompletableFuture.completedFuture(ResponseEntity.notFound().build());
+        }
+
+        return loadOnce(key, () -> loadReview(id))
+                .thenApply(found -> {
+                    ReviewDto review = found.orElse(null);
+                    if (review != null) {
+                        return reviewResponse(review, ifNoneMatch);
+                    } else {
+                        log.warn("Отзыв с ID: {} не найден", id);
+                        return ResponseEntity.notFound().<ReviewDto>build();
+                    }
+                })
+                .exceptionally(this::backendFailed);
+    }
+
+    /**
+     * Все отзывы. JSON-массив пишется частями через ResponseBodyEmitter: при попадании в индекс -
+     * тела по {@link #LIST_WRITE_CHUNK} ID из кеша (недостающие - через BatchGetReviews), при промахе -
+     * страницами domain-service, которые заодно строят индекс. Следующая часть запрашивается после
+     * отправки предыдущей: ни список, ни ожидающий domain-service поток на запрос не держатся.
+     * Tomcat не сжимает ответы со строгим ETag, поэтому gzip здесь же, со своим ETag у сжатого
+     * представления и Vary: Accept-Encoding.
+     */
+    @GetMapping(params = {"!client", "!minRating", "!maxRating"})
+    public CompletableFuture<ResponseEntity<ResponseBodyEmitter>> getAllReviews(@RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch,
+                                                                                 @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding) {
+        log.info("Запрос на получение всех отзывов");
+
+        boolean gzip = acceptsGzip(acceptEncoding);
+        String etag = gzip ? gzipEtag(listEtag()) : listEtag();
+        if (etagMatches(ifNoneMatch, etag)) {
+            log.info("NOT MODIFIED - Список отзывов не изменился");
+            return CompletableFuture.completedFuture(ResponseEntity.status(HttpStatus.NOT_MODIFIED)
+                    .eTag(etag).varyBy(HttpHeaders.ACCEPT_ENCODING).build());
+        }
+
+        List<String> cachedIds = cacheService.getCachedReviewIds(null, -1);
+        if (cachedIds == null) {
+            return reviewsArray(etag, gzip, new PageChunks(buildingIndex.compareAndSet(false, true)));
+        }
+
+        log.info("CACHE HIT - Индекс списка содержит {} отзывов", cachedIds.size());
+        refreshEarlyIfDue(RedisCacheService.REVIEW_IDS_KEY, this::rebuildReviewIndex);
+        return reviewsArray(etag, gzip, new IndexChunks(Lists.partition(cachedIds, LIST_WRITE_CHUNK)));
+    }
+
+    @GetMapping(params = {"limit", "!client", "!minRating", "!maxRating"})
+    public CompletableFuture<ResponseEntity<ReviewPageDto>> getReviewsPage(@RequestParam int limit,
+                                                                           @RequestParam(required = false) String cursor,
+                                                                           @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        if (limit <= 0) {
+            return CompletableFuture.completedFuture(ResponseEntity.badRequest().build());
         }
+        int pageSize = Math.min(limit, MAX_PAGE_SIZE);
+        log.info("Запрос страницы отзывов: limit={}, cursor={}", pageSize, cursor);
 
-        ReviewDto review = reviewGrpcClient.getReviewById(id).orElse(null);
-        if (review != null) {
-            log.info("CACHE MISS - Отзыв с ID: {} получен через gRPC и будет кеширован", id);
-            cacheService.cacheReview(id, review);
-            return ResponseEntity.ok(review);
-        } else {
-            log.warn("Отзыв с ID: {} не найден", id);
-            return ResponseEntity.notFound().build();
+        // страница определяется URL (limit, cursor), поэтому достаточно версии всего списка
+        String etag = listEtag();
+        if (etagMatches(ifNoneMatch, etag)) {
+            log.info("NOT MODIFIED - Страница отзывов не изменилась: limit={}, cursor={}", pageSize, cursor);
+            return CompletableFuture.completedFuture(notModified(etag));
         }
+
+        // на одну запись больше, чтобы узнать, есть ли следующая страница
+        List<String> cachedIds = cacheService.getCachedReviewIds(cursor, pageSize + 1);
+        if (cachedIds == null) {
+            // индекс не заполнен: только эта страница из domain-service (keyset-запрос по курсору).
+            // Полный индекс заполняет GET /api/reviews при промахе - страница не должна стоить O(коллекции)
+            return loadPage(pageSize, cursor)
+                    .thenApply(page -> ResponseEntity.ok().eTag(etag).body(page))
+                    .exceptionally(this::backendFailed);
+        }
+
+        List<String> pageIds = cachedIds.subList(0, Math.min(cachedIds.size(), pageSize));
+        String nextCursor = cachedIds.size() > pageSize ? pageIds.get(pageSize - 1) : null;
+        return resolveReviews(pageIds)
+                .thenApply(reviews -> ResponseEntity.ok().eTag(etag).body(new ReviewPageDto(reviews, nextCursor)))
+                .exceptionally(this::backendFailed);
     }
 
+    /**
+     * Поиск по клиенту и диапазону оценок (индексы domain-service), keyset-пагинация по (rating, id).
+     * Страницы кешируются под нормализованным ключом запроса.
+     */
     @GetMapping
-    public ResponseEntity<List<ReviewDto>> getAllReviews() {
-        log.info("Запрос на получение всех отзывов");
+    public CompletableFuture<ResponseEntity<ReviewPageDto>> searchReviews(@RequestParam(required = false) String client,
+                                                                          @RequestParam(required = false) Integer minRating,
+                                                                          @RequestParam(required = false) Integer maxRating,
+                                                                          @RequestParam(defaultValue = "" + DEFAULT_SEARCH_PAGE_SIZE) int limit,
+                                                                          @RequestParam(required = false) String cursor) {
+        if (limit <= 0 || (minRating != null && maxRating != null && minRating > maxRating)) {
+            return CompletableFuture.completedFuture(ResponseEntity.badRequest().build());
+        }
+        String normalizedClient = client == null || client.isBlank() ? null : client.trim();
+        int pageSize = Math.min(limit, MAX_PAGE_SIZE);
+        String normalizedCursor = cursor == null || cursor.isEmpty() ? null : cursor;
+        log.info("Поиск отзывов: client={}, minRating={}, maxRating={}, limit={}, cursor={}",
+                normalizedClient, minRating, maxRating, pageSize, normalizedCursor);
+        String key = RedisCacheService.searchKey(normalizedClient, minRating, maxRating, pageSize, normalizedCursor);
 
-        List<ReviewDto> cachedReviews = cacheService.getCachedAllReviews();
-        if (!cachedReviews.isEmpty()) {
-            log.info("CACHE HIT - Возвращено {} отзывов из Redis", cachedReviews.size());
-            return ResponseEntity.ok(cachedReviews);
+        RedisCacheService.CachedIdsPage cachedPage = cacheService.getCachedSearch(key);
+        if (cachedPage != null) {
+            return resolveReviews(cachedPage.ids())
+                    .thenApply(reviews -> ResponseEntity.ok(new ReviewPageDto(reviews, cachedPage.nextCursor())))
+                    .exceptionally(this::backendFailed);
         }
 
-        List<ReviewDto> reviews = reviewGrpcClient.getAllReviews();
-        if (reviews.isEmpty()) {
-            log.warn("Нет доступных отзывов для возврата");
-            return ResponseEntity.noContent().build();
+        return loadOnce(key, () -> reviewGrpcClient
+                        .searchReviews(normalizedClient, minRating, maxRating, pageSize, normalizedCursor)
+                        .thenApply(page -> {
+                            cacheService.cacheSearch(key, page);
+                            return page;
+                        }))
+                .thenApply(ResponseEntity::ok)
+                .exceptionally(this::backendFailed);
+    }
+
+    /**
+     * Поиск по словам комментария и клиента с ранжированием по релевантности.
+     * domain-service возвращает только ID, тела отзывов берутся из кеша.
+     */
+    @GetMapping("/search")
+    public CompletableFuture<ResponseEntity<List<CommentMatchDto>>> searchComments(@RequestParam("q") String query,
+                                                                                   @RequestParam(defaultValue = "" + DEFAULT_SEARCH_PAGE_SIZE) int limit) {
+        if (query.isBlank() || limit <= 0) {
+            return CompletableFuture.completedFuture(ResponseEntity.badRequest().build());
         }
+        log.info("Поиск по комментариям: q={}, limit={}", query, limit);
+
+        return reviewGrpcClient.searchComments(query, Math.min(limit, MAX_PAGE_SIZE))
+                .thenCompose(matches -> resolveReviews(matches.stream().map(CommentMatchDto::getId).toList())
+                        .thenApply(reviews -> {
+                            Map<String, ReviewDto> byId = new HashMap<>();
+                            reviews.forEach(review -> byId.put(review.getId(), review));
+                            // отзыв мог быть удалён между поиском и чтением - такой результат пропускается
+                            List<CommentMatchDto> found = new ArrayList<>(matches.size());
+                            for (CommentMatchDto match : matches) {
+                                ReviewDto review = byId.get(match.getId());
+                                if (review != null) {
+                                    match.setReview(review);
+                                    found.add(match);
+                                }
+                            }
+                            return ResponseEntity.ok(found);
+                        }))
+                .exceptionally(this::backendFailed);
+    }
+
+    /**
+     * Средняя оценка, гистограмма оценок и число отзывов по клиентам; с client - только по этому клиенту.
+     */
+    @GetMapping("/stats")
+    public CompletableFuture<ResponseEntity<RatingStatsDto>> getRatingStats(@RequestParam(required = false) String client) {
+        log.info("Запрос агрегатов оценок, клиент: {}", client);
+
+        return reviewGrpcClient.getRatingStats(client)
+                .thenApply(ResponseEntity::ok)
+                .exceptionally(this::backendFailed);
+    }
+
+    /**
+     * Выгрузка всех отзывов в формате NDJSON (одна JSON-запись на строку) прямо из потока gRPC,
+     * без накопления списка в памяти.
+     */
+    @GetMapping(value = "/stream", produces = APPLICATION_NDJSON)
+    public ResponseEntity<StreamingResponseBody> streamReviews() {
+        log.info("Запрос потоковой выгрузки всех отзывов");
 
-        log.info("CACHE MISS - {} отзывов получены через gRPC и будут кешированы", reviews.size());
-        cacheService.cacheAllReviews(reviews);
-        return ResponseEntity.ok(reviews);
+        StreamingResponseBody body = out -> {
+            int[] written = {0};
+            try (JsonGenerator generator = objectMapper.getFactory().createGenerator(out)) {
+                generator.setRootValueSeparator(null);
+                reviewGrpcClient.streamReviews(review -> {
+                    writeReview(generator, review);
+                    generator.writeRaw('\n');
+                    if (++written[0] % STREAM_FLUSH_EVERY == 0) {
+                        generator.flush();
+                    }
+                });
+            }
+            log.info("Потоковая выгрузка завершена, отправлено {} отзывов", written[0]);
+        };
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType(APPLICATION_NDJSON))
+                .body(body);
     }
 
     @PostMapping
-    public ResponseEntity<String> createReview(@RequestBody NewReviewRequest request) {
+    public CompletableFuture<ResponseEntity<String>> createReview(@RequestBody NewReviewRequest request) {
         log.info("Создание нового отзыва для клиента: {}", request.getClient());
 
-        String message = String.format("CREATE:%s,%d,%s",
-                request.getClient(),
-                request.getRating(),
-                request.getComment());
-        rabbitMQSender.sendMessage(message);
-        log.info("Сообщение для создания отзыва отправлено в RabbitMQ: {}", message);
+        String id = ReviewCommands.newReviewId();
+        ReviewCommand command = ReviewCommands.create(id, request);
+        return rabbitMQSender.sendMessage(command)
+                .handle((confirmed, ex) -> {
+                    if (ex != null) {
+                        return publishFailed(command, ex);
+                    }
+                    log.info("Сообщение для создания отзыва подтверждено RabbitMQ: {}", command.getMessageId());
 
-        cacheService.evictAllReviews();
-        log.info("Кеш всех отзывов инвалидирован");
+                    // кеш обновится событием domain-service после записи отзыва
+                    afterConfirm(command, () -> reviewIdFilter.add(id));
 
-        return ResponseEntity.accepted().body("Запрос на создание отзыва принят");
+                    return ResponseEntity.accepted()
+                            .location(URI.create("/api/reviews/" + id))
+                            .body("Запрос на создание отзыва принят");
+                });
+    }
+
+    /**
+     * Загрузка отзывов в формате NDJSON (один JSON-объект на строку) одним потоковым вызовом gRPC,
+     * мимо RabbitMQ. Тело читается построчно по мере отправки, целиком в памяти не хранится.
+     * Нераспознанные строки учитываются в failed вместе с записями, отклонёнными domain-service.
+     * Ограничитель записи не применяется: он подстраивается по задержке публикации отдельных команд,
+     * а темп загрузки задаёт сам domain-service (следующая пачка запрашивается после записи предыдущей).
+     */
+    @PostMapping(value = "/bulk", consumes = APPLICATION_NDJSON)
+    public CompletableFuture<ResponseEntity<BulkImportResultDto>> bulkCreateReviews(InputStream body) {
+        log.info("Запрос потоковой загрузки отзывов");
+
+        NdjsonReviews reviews = new NdjsonReviews(
+                new BufferedReader(new InputStreamReader(body, StandardCharsets.UTF_8)),
+                objectMapper.readerFor(NewReviewRequest.class));
+        return reviewGrpcClient.bulkCreateReviews(reviews)
+                .thenApply(result -> {
+                    result.setFailed(result.getFailed() + reviews.malformed);
+                    log.info("Загрузка отзывов завершена: вставлено {}, отклонено {}", result.getInserted(), result.getFailed());
+                    return ResponseEntity.ok(result);
+                })
+                .exceptionally(ex -> {
+                    Throwable cause = ex instanceof CompletionException && ex.getCause() != null ? ex.getCause() : ex;
+                    if (cause instanceof UncheckedIOException) {
+                        log.error("Ошибка чтения тела загрузки: {}", cause.getMessage());
+                        return ResponseEntity.badRequest().build();
+                    }
+                    return backendFailed(cause);
+                });
     }
 
     @PutMapping("/{id}")
-    public ResponseEntity<String> updateReview(@PathVariable String id, @RequestBody NewReviewRequest request) {
+    public CompletableFuture<ResponseEntity<String>> updateReview(@PathVariable String id,
+                                                                  @RequestBody NewReviewRequest request) {
         log.info("Обновление отзыва с ID: {}", id);
 
-        String message = String.format("UPDATE:%s,%s,%d,%s",
-                id,
-                request.getClient(),
-                request.getRating(),
-                request.getComment());
-        rabbitMQSender.sendMessage(message);
-        log.info("Сообщение для обновления отзыва отправлено в RabbitMQ: {}", message);
+        ReviewCommand command = ReviewCommands.update(id, request);
+        return rabbitMQSender.sendMessage(command)
+                .handle((confirmed, ex) -> {
+                    if (ex != null) {
+                        return publishFailed(command, ex);
+                    }
+                    log.info("Сообщение для обновления отзыва подтверждено RabbitMQ: {}", command.getMessageId());
 
-        cacheService.evictReview(id);
-        cacheService.evictAllReviews();
-        log.info("Кеш отзыва с ID: {} и кеш всех отзывов инвалидирован", id);
+                    // обновление несуществующего отзыва создаёт его; кеш обновится событием domain-service
+                    afterConfirm(command, () -> reviewIdFilter.add(id));
 
-        return ResponseEntity.accepted().body("Запрос на обновление отзыва принят");
+                    return ResponseEntity.accepted().body("Запрос на обновление отзыва принят");
+                });
     }
 
     @DeleteMapping("/{id}")
-    public ResponseEntity<String> deleteReview(@PathVariable String id) {
+    public CompletableFuture<ResponseEntity<String>> deleteReview(@PathVariable String id) {
         log.info("Удаление отзыва с ID: {}", id);
 
-        String message = String.format("DELETE:%s", id);
-        rabbitMQSender.sendMessage(message);
-        log.info("Сообщение для удаления отзыва отправлено в RabbitMQ: {}", message);
+        ReviewCommand command = ReviewCommands.delete(id);
+        return rabbitMQSender.sendMessage(command)
+                .handle((confirmed, ex) -> {
+                    if (ex != null) {
+                        return publishFailed(command, ex);
+                    }
+                    log.info("Сообщение для удаления отзыва подтверждено RabbitMQ: {}", command.getMessageId());
+
+                    return ResponseEntity.accepted().body("Запрос на удаление отзыва принят");
+                });
+    }
 
-        cacheService.evictReview(id);
-        cacheService.evictAllReviews();
-        log.info("Кеш отзыва с ID: {} и кеш всех отзывов инвалидирован", id);
+    private CompletableFuture<Optional<ReviewDto>> loadReview(String id) {
+        return reviewGrpcClient.getReviewById(id).thenApply(found -> {
+            if (found.isPresent()) {
+                log.info("CACHE MISS - Отзыв с ID: {} получен через gRPC и будет кеширован", id);
+                cacheService.cacheReview(id, found.get());
+            } else if (!reviewIdFilter.isRecentlyCreated(id)) {
+                // недавно созданный отзыв может ещё ждать записи в очереди - его отсутствие не кешируем
+                cacheService.cacheMissing(id);
+            }
+            return found;
+        });
+    }
+
+    /**
+     * Фоновое построение индекса списка обходом страниц domain-service, без записи ответа.
+     */
+    private CompletableFuture<Void> rebuildReviewIndex() {
+        if (!buildingIndex.compareAndSet(false, true)) {
+            return CompletableFuture.completedFuture(null);
+        }
+        PageChunks pages = new PageChunks(true);
+        return writeRemaining(pages, null).whenComplete((done, ex) -> pages.close(ex == null));
+    }
+
+    private CompletableFuture<ReviewPageDto> loadPage(int pageSize, String cursor) {
+        return reviewGrpcClient.getReviewsPage(pageSize, cursor).thenApply(page -> {
+            log.info("CACHE MISS - Страница из {} отзывов получена через gRPC", page.getItems().size());
+            cacheService.cacheReviews(page.getItems());
+            return page;
+        });
+    }
+
+    /**
+     * Тела отзывов по ID из индекса списка: пакетное чтение кеша, недостающие - через BatchGetReviews.
+     * ID, которых нет и в domain-service, убираются из индекса.
+     */
+    private CompletableFuture<List<ReviewDto>> resolveReviews(List<String> ids) {
+        Map<String, ReviewDto> found = cacheService.getCachedReviews(ids);
+        List<String> missing = ids.stream().filter(id -> !found.containsKey(id)).toList();
+        if (missing.isEmpty()) {
+            return CompletableFuture.completedFuture(inOrder(ids, found));
+        }
+
+        log.info("CACHE MISS - {} отзывов из индекса списка будут получены через gRPC", missing.size());
+        List<CompletableFuture<Map<String, ReviewDto>>> batches = new ArrayList<>();
+        for (int from = 0; from < missing.size(); from += MAX_PAGE_SIZE) {
+            batches.add(reviewGrpcClient.batchGetReviews(missing.subList(from, Math.min(missing.size(), from + MAX_PAGE_SIZE))));
+        }
+        return CompletableFuture.allOf(batches.toArray(CompletableFuture[]::new)).thenApply(done -> {
+            Map<String, ReviewDto> loaded = new HashMap<>();
+            batches.forEach(batch -> loaded.putAll(batch.join()));
+            cacheService.cacheReviews(loaded.values());
+            missing.stream().filter(id -> !loaded.containsKey(id)).forEach(cacheService::removeFromIndex);
+            found.putAll(loaded);
+            return inOrder(ids, found);
+        });
+    }
+
+    private static List<ReviewDto> inOrder(List<String> ids, Map<String, ReviewDto> reviews) {
+        List<ReviewDto> ordered = new ArrayList<>(ids.size());
+        for (String id : ids) {
+            ReviewDto review = reviews.get(id);
+            if (review != null) {
+                ordered.add(review);
+            }
+        }
+        return ordered;
+    }
+
+    /**
+     * Загрузка значения при промахе кеша: одновременные промахи по одному ключу
+     * разделяют один вызов domain-service. Длительность загрузки учитывается
+     * при раннем обновлении ключа.
+     */
+    private <T> CompletableFuture<T> loadOnce(String key, Supplier<CompletableFuture<T>> loader) {
+        return singleFlight.execute(key, () -> {
+            long start = System.nanoTime();
+            return loader.get().whenComplete((value, ex) ->
+                    cacheService.recordRecomputeTime(key, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)));
+        });
+    }
+
+    /**
+     * Фоновый пересчёт горячего ключа незадолго до истечения TTL; ответ клиенту не ждёт его.
+     */
+    private <T> void refreshEarlyIfDue(String key, Supplier<CompletableFuture<T>> loader) {
+        if (cacheService.shouldRefreshEarly(key)) {
+            log.debug("EARLY REFRESH - Ключ {} будет обновлён до истечения TTL", key);
+            loadOnce(key, loader);
+        }
+    }
+
+    /**
+     * Ответ со списком отзывов. Первая часть готовится до ответа: сбой domain-service ещё можно
+     * вернуть статусом; остальные пишутся в ResponseBodyEmitter после ответа.
+     */
+    private CompletableFuture<ResponseEntity<ResponseBodyEmitter>> reviewsArray(String etag, boolean gzip, ListChunks chunks) {
+        ReviewsArrayWriter writer = new ReviewsArrayWriter(reviewArrayWriter, gzip);
+        return chunks.writeNext(writer)
+                .thenApply(more -> {
+                    if (!more && writer.written() == 0) {
+                        chunks.close(true);
+                        log.warn("Нет доступных отзывов для возврата");
+                        return ResponseEntity.noContent().<ResponseBodyEmitter>build();
+                    }
+                    ResponseBodyEmitter emitter = new ResponseBodyEmitter();
+                    writer.attach(emitter);
+                    CompletableFuture<Void> remaining = more
+                            ? writeRemaining(chunks, writer)
+                            : CompletableFuture.completedFuture(null);
+                    remaining.whenComplete((done, ex) -> {
+                        chunks.close(ex == null);
+                        if (ex == null) {
+                            writer.finish();
+                            log.info("Список отзывов отправлен: {} отзывов", writer.written());
+                        } else {
+                            log.error("Список отзывов прерван после {} отзывов: {}", writer.written(), ex.getMessage());
+                            writer.fail(ex);
+                        }
+                    });
+                    ResponseEntity.BodyBuilder response = ResponseEntity.ok()
+                            .eTag(etag)
+                            .varyBy(HttpHeaders.ACCEPT_ENCODING)
+                            .contentType(MediaType.APPLICATION_JSON);
+                    if (gzip) {
+                        response.header(HttpHeaders.CONTENT_ENCODING, GZIP);
+                    }
+                    return response.body(emitter);
+                })
+                .exceptionally(ex -> {
+                    chunks.close(false);
+                    return backendFailed(ex);
+                });
+    }
+
+    /**
+     * Запись оставшихся частей по одной: следующая запрашивается, когда предыдущая записана
+     * и отправлена. Части, готовые сразу (все тела в кеше), пишутся в цикле, а не вложенными
+     * обратными вызовами. Без writer части только читаются (построение индекса).
+     */
+    private static CompletableFuture<Void> writeRemaining(ListChunks chunks, ReviewsArrayWriter writer) {
+        CompletableFuture<Void> done = new CompletableFuture<>();
+        writeRemaining(chunks, writer, done);
+        return done;
+    }
+
+    private static void writeRemaining(ListChunks chunks, ReviewsArrayWriter writer, CompletableFuture<Void> done) {
+        while (true) {
+            CompletableFuture<Boolean> next;
+            try {
+                next = chunks.writeNext(writer);
+            } catch (RuntimeException e) {
+                done.completeExceptionally(e);
+                return;
+            }
+            if (!next.isDone()) {
+                next.whenComplete((more, ex) -> {
+                    if (afterChunk(writer, more, ex, done)) {
+                        writeRemaining(chunks, writer, done);
+                    }
+                });
+                return;
+            }
+            boolean[] more = {false};
+            next.whenComplete((value, ex) -> more[0] = afterChunk(writer, value, ex, done));
+            if (!more[0]) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Отправка записанной части.
+     *
+     * @return true, если есть следующая часть; иначе done завершён.
+     */
+    private static boolean afterChunk(ReviewsArrayWriter writer, Boolean more, Throwable ex, CompletableFuture<Void> done) {
+        if (ex != null) {
+            done.completeExceptionally(ex);
+            return false;
+        }
+        try {
+            if (writer != null) {
+                writer.send();
+            }
+        } catch (IOException | RuntimeException e) {
+            // клиент закрыл соединение
+            done.completeExceptionally(e);
+            return false;
+        }
+        if (!more) {
+            done.complete(null);
+        }
+        return more;
+    }
+
+    private ResponseEntity<ReviewDto> reviewResponse(ReviewDto review, String ifNoneMatch) {
+        String etag = RedisCacheService.reviewEtag(review);
+        // ETag из кеша мог отсутствовать: тогда сравнение по телу, прочитанному сейчас
+        if (etagMatches(ifNoneMatch, etag)) {
+            return notModified(etag);
+        }
+        return ResponseEntity.ok().eTag(etag).body(review);
+    }
+
+    /**
+     * ETag списка по его версии в Redis; null - версия неизвестна, ответ без ETag.
+     */
+    private String listEtag() {
+        String version = cacheService.getListVersion();
+        return version == null ? null : RedisCacheService.listEtag(version);
+    }
+
+    /**
+     * Сравнение по If-None-Match: "*", список через запятую, слабые ETag (W/) сравниваются
+     * без учёта признака, как требует RFC 9110 для GET.
+     */
+    private static boolean etagMatches(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null || etag == null) {
+            return false;
+        }
+        String opaque = withoutWeakPrefix(etag);
+        for (String candidate : ifNoneMatch.split(",")) {
+            String tag = candidate.trim();
+            if (tag.equals("*") || withoutWeakPrefix(tag).equals(opaque)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String withoutWeakPrefix(String etag) {
+        return etag.startsWith("W/") ? etag.substring(2) : etag;
+    }
+
+    /**
+     * ETag сжатого представления: другие байты - другой строгий ETag.
+     */
+    private static String gzipEtag(String etag) {
+        return etag == null ? null : etag.substring(0, etag.length() - 1) + "-" + GZIP + "\"";
+    }
+
+    /**
+     * Accept-Encoding допускает gzip: явно или через "*", без q=0.
+     */
+    private static boolean acceptsGzip(String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return false;
+        }
+        for (String coding : acceptEncoding.split(",")) {
+            String[] parts = coding.split(";");
+            String name = parts[0].trim();
+            if (!name.equalsIgnoreCase(GZIP) && !name.equals("*")) {
+                continue;
+            }
+            boolean rejected = false;
+            for (int i = 1; i < parts.length; i++) {
+                String param = parts[i].trim().replace(" ", "");
+                if (param.startsWith("q=") && param.substring(2).matches("0(\\.0*)?")) {
+                    rejected = true;
+                }
+            }
+            return !rejected;
+        }
+        return false;
+    }
+
+    private static <T> ResponseEntity<T> notModified(String etag) {
+        return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag).build();
+    }
+
+    /**
+     * Ошибка вызова domain-service: истёкший дедлайн - 504, недоступность - 503, неверный запрос - 400.
+     */
+    private <T> ResponseEntity<T> backendFailed(Throwable ex) {
+        LimitExceededException overload = limitExceeded(ex);
+        if (overload != null) {
+            return overloaded(overload);
+        }
+        Status status = Status.fromThrowable(ex);
+        log.error("Ошибка запроса к domain-service: {}", status);
+        HttpStatus httpStatus = switch (status.getCode()) {
+            case DEADLINE_EXCEEDED -> HttpStatus.GATEWAY_TIMEOUT;
+            case UNAVAILABLE -> HttpStatus.SERVICE_UNAVAILABLE;
+            case INVALID_ARGUMENT -> HttpStatus.BAD_REQUEST;
+            default -> HttpStatus.BAD_GATEWAY;
+        };
+        return ResponseEntity.status(httpStatus).build();
+    }
+
+    /**
+     * Действие после подтверждения отправки. Команда уже принята брокером и будет применена,
+     * поэтому ошибка здесь только записывается в журнал: ответ 503 привёл бы к повтору и дублю.
+     */
+    private static void afterConfirm(ReviewCommand command, Runnable action) {
+        try {
+            action.run();
+        } catch (RuntimeException e) {
+            log.warn("Ошибка после подтверждения сообщения {}: {}", command.getMessageId(), e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Ответ, когда RabbitMQ не подтвердил отправку команды (или сработало ограничение нагрузки).
+     */
+    private ResponseEntity<String> publishFailed(ReviewCommand command, Throwable ex) {
+        LimitExceededException overload = limitExceeded(ex);
+        if (overload != null) {
+            return overloaded(overload);
+        }
+        log.error("Сообщение {} не подтверждено RabbitMQ: {}", command.getMessageId(), ex.getMessage());
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .body("Запрос не принят, повторите попытку позже");
+    }
+
+    /**
+     * Перегрузка: запрос отклонён сразу, клиенту - 503 с Retry-After вместо ожидания таймаута.
+     */
+    private <T> ResponseEntity<T> overloaded(LimitExceededException ex) {
+        log.warn("Запрос отклонён ограничителем нагрузки: {}", ex.getMessage());
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(ex.getRetryAfterSeconds()))
+                .build();
+    }
+
+    private static LimitExceededException limitExceeded(Throwable ex) {
+        for (Throwable cause = ex; cause != null; cause = cause.getCause()) {
+            if (cause instanceof LimitExceededException limit) {
+                return limit;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Части списка отзывов, записываемые по очереди.
+     */
+    private interface ListChunks {
+
+        /**
+         * Запись следующей части.
+         *
+         * @param writer куда писать; null - только прочитать.
+         * @return true, если после неё есть ещё части.
+         */
+        CompletableFuture<Boolean> writeNext(ReviewsArrayWriter writer);
+
+        /**
+         * Завершение обхода; повторный вызов ничего не делает.
+         *
+         * @param completed пройдены все части.
+         */
+        default void close(boolean completed) {
+        }
+    }
+
+    /**
+     * Части списка по индексу: тела из кеша одним конвейером на часть, недостающие - через
+     * BatchGetReviews. ID, которых нет и в domain-service, убираются из индекса.
+     */
+    private final class IndexChunks implements ListChunks {
+        private final List<List<String>> chunks;
+        private int next;
+
+        IndexChunks(List<List<String>> chunks) {
+            this.chunks = chunks;
+        }
+
+        @Override
+        public CompletableFuture<Boolean> writeNext(ReviewsArrayWriter writer) {
+            if (next == chunks.size()) {
+                return CompletableFuture.completedFuture(false);
+            }
+            List<String> ids = chunks.get(next++);
+            boolean more = next < chunks.size();
+            Map<String, ReviewDto> found = cacheService.getCachedReviews(ids);
+            List<String> missing = ids.stream().filter(id -> !found.containsKey(id)).toList();
+            if (missing.isEmpty()) {
+                writer.write(ids, found);
+                return CompletableFuture.completedFuture(more);
+            }
+
+            log.info("CACHE MISS - {} отзывов из индекса списка будут получены через gRPC", missing.size());
+            return reviewGrpcClient.batchGetReviews(missing).thenApply(loaded -> {
+                cacheService.cacheReviews(loaded.values());
+                missing.stream().filter(id -> !loaded.containsKey(id)).forEach(cacheService::removeFromIndex);
+                found.putAll(loaded);
+                writer.write(ids, found);
+                return more;
+            });
+        }
+    }
+
+    /**
+     * Части списка - страницы domain-service по порядку ID. Если индекс строит этот обход, ID страниц
+     * складываются в новый индекс, который заменяет прежний после последней страницы.
+     */
+    private final class PageChunks implements ListChunks {
+        private String buildKey;
+        private String cursor;
+        private long count;
+        private boolean closed;
+
+        PageChunks(boolean buildIndex) {
+            this.buildKey = buildIndex ? cacheService.beginReviewIndex() : null;
+            this.closed = !buildIndex;
+        }
+
+        @Override
+        public CompletableFuture<Boolean> writeNext(ReviewsArrayWriter writer) {
+            return loadPage(MAX_PAGE_SIZE, cursor).thenApply(page -> {
+                List<ReviewDto> reviews = page.getItems();
+                if (writer != null) {
+                    reviews.forEach(writer::write);
+                }
+                if (buildKey != null
+                        && !cacheService.appendToReviewIndex(buildKey, reviews.stream().map(ReviewDto::getId).toList())) {
+                    close(false);
+                }
+                count += reviews.size();
+                cursor = page.getNextCursor();
+                return cursor != null;
+            });
+        }
+
+        @Override
+        public synchronized void close(boolean completed) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            if (completed) {
+                cacheService.completeReviewIndex(buildKey, count);
+            } else {
+                cacheService.abandonReviewIndex(buildKey);
+            }
+            buildKey = null;
+            buildingIndex.set(false);
+        }
+    }
+
+    /**
+     * JSON-массив отзывов, отправляемый частями в ResponseBodyEmitter. Один SequenceWriter (и один
+     * JsonGenerator) на ответ пишет отзывы по отображению Jackson для ReviewDto в буфер части.
+     * Со сжатием все части идут через один GZIPOutputStream, сбрасываемый (SYNC_FLUSH) на каждой отправке.
+     */
+    private static final class ReviewsArrayWriter {
+        private final ChunkBuffer buffer = new ChunkBuffer();
+        private final SequenceWriter json;
+        private ResponseBodyEmitter emitter;
+        private long written;
+
+        ReviewsArrayWriter(ObjectWriter reviewWriter, boolean gzip) {
+            try {
+                OutputStream out = gzip ? new GZIPOutputStream(buffer, 8192, true) : buffer;
+                json = reviewWriter.writeValuesAsArray(out);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        void write(List<String> ids, Map<String, ReviewDto> reviews) {
+            for (String id : ids) {
+                ReviewDto review = reviews.get(id);
+                if (review != null) {
+                    write(review);
+                }
+            }
+        }
+
+        void write(ReviewDto review) {
+            try {
+                json.write(review);
+                written++;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        long written() {
+            return written;
+        }
+
+        void attach(ResponseBodyEmitter emitter) {
+            this.emitter = emitter;
+            try {
+                send();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        /**
+         * Отправка записанного с прошлой отправки.
+         */
+        void send() throws IOException {
+            json.flush();
+            emitBuffer();
+        }
+
+        void finish() {
+            try {
+                // закрывающая скобка, конец потока gzip
+                json.close();
+                emitBuffer();
+                emitter.complete();
+            } catch (IOException e) {
+                emitter.completeWithError(e);
+            }
+        }
+
+        void fail(Throwable ex) {
+            emitter.completeWithError(ex);
+        }
+
+        private void emitBuffer() throws IOException {
+            if (buffer.size() > 0) {
+                emitter.send(buffer.take(), MediaType.APPLICATION_JSON);
+            }
+        }
+    }
+
+    /**
+     * Буфер части ответа. Записанное отдаётся без копирования: emitter может отправить часть позже
+     * (до инициализации ответа он копит отправки), поэтому следующая часть пишется в новый массив
+     * по размеру предыдущей части, а не в тот же.
+     */
+    private static final class ChunkBuffer extends ByteArrayOutputStream {
+        private static final int INITIAL_SIZE = 8192;
+
+        ChunkBuffer() {
+            super(INITIAL_SIZE);
+        }
+
+        synchronized Resource take() {
+            Resource chunk = new InputStreamResource(new ByteArrayInputStream(buf, 0, count));
+            // запас на часть чуть длиннее предыдущей: без него буфер удваивался бы с копированием
+            buf = new byte[Math.max(count + (count >> 2), INITIAL_SIZE)];
+            count = 0;
+            return chunk;
+        }
+    }
+
+    /**
+     * Записи NDJSON по одной строке; пустые строки пропускаются, нераспознанные считаются в malformed.
+     */
+    private static final class NdjsonReviews implements Iterator<NewReviewRequest> {
+        private final BufferedReader reader;
+        private final ObjectReader jsonReader;
+        private NewReviewRequest next;
+        private long lineNumber;
+        long malformed;
+
+        NdjsonReviews(BufferedReader reader, ObjectReader jsonReader) {
+            this.reader = reader;
+            this.jsonReader = jsonReader;
+        }
+
+        @Override
+        public boolean hasNext() {
+            try {
+                String line;
+                while (next == null && (line = reader.readLine()) != null) {
+                    lineNumber++;
+                    if (line.isBlank()) {
+                        continue;
+                    }
+                    try {
+                        next = jsonReader.readValue(line);
+                    } catch (JsonProcessingException e) {
+                        malformed++;
+                        log.warn("Строка {} загрузки не распознана: {}", lineNumber, e.getOriginalMessage());
+                    }
+                }
+                return next != null;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        @Override
+        public NewReviewRequest next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            NewReviewRequest review = next;
+            next = null;
+            return review;
+        }
+    }
 
-        return ResponseEntity.accepted().body("Запрос на удаление отзыва принят");
+    private static void writeReview(JsonGenerator generator, ReviewResponse review) throws IOException {
+        generator.writeStartObject();
+        generator.writeStringField("id", review.getId());
+        generator.writeStringField("client", review.getClient());
+        generator.writeNumberField("rating", review.getRating());
+        generator.writeStringField("comment", review.getComment());
+        generator.writeEndObject();
     }
 }
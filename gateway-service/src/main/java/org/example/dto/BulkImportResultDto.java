@@ -0,0 +1,40 @@
+package org.example.dto;
+
+import java.io.Serializable;
+
+public class BulkImportResultDto implements Serializable {
+    private long inserted;
+    private long failed;
+
+    public BulkImportResultDto() {
+    }
+
+    public BulkImportResultDto(long inserted, long failed) {
+        this.inserted = inserted;
+        this.failed = failed;
+    }
+
+    @Override
+    public String toString() {
+        return "BulkImportResultDto{" +
+                "inserted=" + inserted +
+                ", failed=" + failed +
+                '}';
+    }
+
+    public long getInserted() {
+        return inserted;
+    }
+
+    public void setInserted(long inserted) {
+        this.inserted = inserted;
+    }
+
+    public long getFailed() {
+        return failed;
+    }
+
+    public void setFailed(long failed) {
+        this.failed = failed;
+    }
+}
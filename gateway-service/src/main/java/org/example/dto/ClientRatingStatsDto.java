@@ -0,0 +1,51 @@
+package org.example.dto;
+
+import java.io.Serializable;
+
+public class ClientRatingStatsDto implements Serializable {
+    private String client;
+    private long count;
+    private double average;
+
+    public ClientRatingStatsDto() {
+    }
+
+    public ClientRatingStatsDto(String client, long count, double average) {
+        this.client = client;
+        this.count = count;
+        this.average = average;
+    }
+
+    @Override
+    public String toString() {
+        return "ClientRatingStatsDto{" +
+                "client='" + client + '\'' +
+                ", count=" + count +
+                ", average=" + average +
+                '}';
+    }
+
+    public String getClient() {
+        return client;
+    }
+
+    public void setClient(String client) {
+        this.client = client;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public void setCount(long count) {
+        this.count = count;
+    }
+
+    public double getAverage() {
+        return average;
+    }
+
+    public void setAverage(double average) {
+        this.average = average;
+    }
+}
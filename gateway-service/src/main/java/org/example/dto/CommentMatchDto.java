@@ -0,0 +1,50 @@
+package org.example.dto;
+
+import java.io.Serializable;
+
+public class CommentMatchDto implements Serializable {
+    private String id;
+    private float score;
+    private ReviewDto review;
+
+    public CommentMatchDto() {
+    }
+
+    public CommentMatchDto(String id, float score) {
+        this.id = id;
+        this.score = score;
+    }
+
+    @Override
+    public String toString() {
+        return "CommentMatchDto{" +
+                "id='" + id + '\'' +
+                ", score=" + score +
+                ", review=" + review +
+                '}';
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public void setId(String id) {
+        this.id = id;
+    }
+
+    public float getScore() {
+        return score;
+    }
+
+    public void setScore(float score) {
+        this.score = score;
+    }
+
+    public ReviewDto getReview() {
+        return review;
+    }
+
+    public void setReview(ReviewDto review) {
+        this.review = review;
+    }
+}
@@ -0,0 +1,64 @@
+package org.example.dto;
+
+import java.io.Serializable;
+import java.util.List;
+import java.util.Map;
+
+public class RatingStatsDto implements Serializable {
+    private long count;
+    private double average;
+    private Map<Integer, Long> histogram;
+    private List<ClientRatingStatsDto> clients;
+
+    public RatingStatsDto() {
+    }
+
+    public RatingStatsDto(long count, double average, Map<Integer, Long> histogram, List<ClientRatingStatsDto> clients) {
+        this.count = count;
+        this.average = average;
+        this.histogram = histogram;
+        this.clients = clients;
+    }
+
+    @Override
+    public String toString() {
+        return "RatingStatsDto{" +
+                "count=" + count +
+                ", average=" + average +
+                ", histogram=" + histogram +
+                ", clients=" + clients +
+                '}';
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public void setCount(long count) {
+        this.count = count;
+    }
+
+    public double getAverage() {
+        return average;
+    }
+
+    public void setAverage(double average) {
+        this.average = average;
+    }
+
+    public Map<Integer, Long> getHistogram() {
+        return histogram;
+    }
+
+    public void setHistogram(Map<Integer, Long> histogram) {
+        this.histogram = histogram;
+    }
+
+    public List<ClientRatingStatsDto> getClients() {
+        return clients;
+    }
+
+    public void setClients(List<ClientRatingStatsDto> clients) {
+        this.clients = clients;
+    }
+}
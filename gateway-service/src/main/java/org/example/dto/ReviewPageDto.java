@@ -0,0 +1,41 @@
+package org.example.dto;
+
+import java.io.Serializable;
+import java.util.List;
+
+public class ReviewPageDto implements Serializable {
+    private List<ReviewDto> items;
+    private String nextCursor;
+
+    public ReviewPageDto() {
+    }
+
+    public ReviewPageDto(List<ReviewDto> items, String nextCursor) {
+        this.items = items;
+        this.nextCursor = nextCursor;
+    }
+
+    @Override
+    public String toString() {
+        return "ReviewPageDto{" +
+                "items=" + items +
+                ", nextCursor='" + nextCursor + '\'' +
+                '}';
+    }
+
+    public List<ReviewDto> getItems() {
+        return items;
+    }
+
+    public void setItems(List<ReviewDto> items) {
+        this.items = items;
+    }
+
+    public String getNextCursor() {
+        return nextCursor;
+    }
+
+    public void setNextCursor(String nextCursor) {
+        this.nextCursor = nextCursor;
+    }
+}
@@ -0,0 +1,137 @@
+package org.example.grpc;
+
+import io.grpc.CallOptions;
+import io.grpc.ClientCall;
+import io.grpc.ForwardingClientCall;
+import io.grpc.ForwardingClientCallListener;
+import io.grpc.ManagedChannel;
+import io.grpc.Metadata;
+import io.grpc.MethodDescriptor;
+import io.grpc.Status;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Несколько каналов к domain-service за одним {@link ManagedChannel}. Одно HTTP/2-соединение
+ * ограничено числом одновременных потоков, поэтому вызовы распределяются по соединениям:
+ * каждый новый вызов уходит в канал с наименьшим числом незавершённых вызовов.
+ */
+public class ChannelPool extends ManagedChannel {
+
+    private final List<ManagedChannel> channels;
+    private final AtomicInteger[] outstanding;
+    // смещение начала поиска, чтобы при равной загрузке каналы выбирались по кругу
+    private final AtomicInteger rotation = new AtomicInteger();
+
+    public ChannelPool(List<ManagedChannel> channels) {
+        if (channels.isEmpty()) {
+            throw new IllegalArgumentException("Channel pool needs at least one channel");
+        }
+        this.channels = List.copyOf(channels);
+        this.outstanding = new AtomicInteger[channels.size()];
+        for (int i = 0; i < outstanding.length; i++) {
+            outstanding[i] = new AtomicInteger();
+        }
+    }
+
+    public int size() {
+        return channels.size();
+    }
+
+    /**
+     * Число незавершённых вызовов в канале index.
+     */
+    public int outstanding(int index) {
+        return outstanding[index].get();
+    }
+
+    @Override
+    public <Q, R> ClientCall<Q, R> newCall(MethodDescriptor<Q, R> method, CallOptions callOptions) {
+        int index = leastBusy();
+        AtomicInteger counter = outstanding[index];
+        return new ForwardingClientCall.SimpleForwardingClientCall<>(channels.get(index).newCall(method, callOptions)) {
+            private final AtomicBoolean released = new AtomicBoolean();
+
+            @Override
+            public void start(Listener<R> listener, Metadata headers) {
+                counter.incrementAndGet();
+                try {
+                    super.start(new ForwardingClientCallListener.SimpleForwardingClientCallListener<>(listener) {
+                        @Override
+                        public void onClose(Status status, Metadata trailers) {
+                            release();
+                            super.onClose(status, trailers);
+                        }
+                    }, headers);
+                } catch (RuntimeException e) {
+                    release();
+                    throw e;
+                }
+            }
+
+            private void release() {
+                if (released.compareAndSet(false, true)) {
+                    counter.decrementAndGet();
+                }
+            }
+        };
+    }
+
+    private int leastBusy() {
+        int size = channels.size();
+        int start = Math.floorMod(rotation.getAndIncrement(), size);
+        int best = start;
+        int bestLoad = outstanding[start].get();
+        for (int i = 1; i < size && bestLoad > 0; i++) {
+            int candidate = (start + i) % size;
+            int load = outstanding[candidate].get();
+            if (load < bestLoad) {
+                best = candidate;
+                bestLoad = load;
+            }
+        }
+        return best;
+    }
+
+    @Override
+    public String authority() {
+        return channels.get(0).authority();
+    }
+
+    @Override
+    public ManagedChannel shutdown() {
+        channels.forEach(ManagedChannel::shutdown);
+        return this;
+    }
+
+    @Override
+    public ManagedChannel shutdownNow() {
+        channels.forEach(ManagedChannel::shutdownNow);
+        return this;
+    }
+
+    @Override
+    public boolean isShutdown() {
+        return channels.stream().allMatch(ManagedChannel::isShutdown);
+    }
+
+    @Override
+    public boolean isTerminated() {
+        return channels.stream().allMatch(ManagedChannel::isTerminated);
+    }
+
+    @Override
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        for (ManagedChannel channel : channels) {
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0 || !channel.awaitTermination(remaining, TimeUnit.NANOSECONDS)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
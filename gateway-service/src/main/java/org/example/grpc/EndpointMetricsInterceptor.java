@@ -0,0 +1,54 @@
+package org.example.grpc;
+
+import io.grpc.CallOptions;
+import io.grpc.Channel;
+import io.grpc.ClientCall;
+import io.grpc.ClientInterceptor;
+import io.grpc.ForwardingClientCall;
+import io.grpc.ForwardingClientCallListener;
+import io.grpc.Grpc;
+import io.grpc.Metadata;
+import io.grpc.MethodDescriptor;
+import io.grpc.Status;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+
+import java.net.SocketAddress;
+
+/**
+ * Счётчик вызовов domain-service по адресу экземпляра, обслужившего вызов
+ * ({@code grpc.client.calls{endpoint, method, status}}): по нему видно, как балансировщик
+ * распределяет нагрузку между экземплярами.
+ */
+public class EndpointMetricsInterceptor implements ClientInterceptor {
+
+    private final MeterRegistry meterRegistry;
+
+    public EndpointMetricsInterceptor(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    @Override
+    public <Q, R> ClientCall<Q, R> interceptCall(MethodDescriptor<Q, R> method, CallOptions callOptions, Channel next) {
+        return new ForwardingClientCall.SimpleForwardingClientCall<>(next.newCall(method, callOptions)) {
+            @Override
+            public void start(Listener<R> listener, Metadata headers) {
+                ClientCall<Q, R> call = delegate();
+                super.start(new ForwardingClientCallListener.SimpleForwardingClientCallListener<>(listener) {
+                    @Override
+                    public void onClose(Status status, Metadata trailers) {
+                        SocketAddress endpoint = call.getAttributes().get(Grpc.TRANSPORT_ATTR_REMOTE_ADDR);
+                        Counter.builder("grpc.client.calls")
+                                .description("Calls to domain-service by serving instance")
+                                .tag("endpoint", endpoint == null ? "none" : endpoint.toString())
+                                .tag("method", method.getBareMethodName())
+                                .tag("status", status.getCode().name())
+                                .register(meterRegistry)
+                                .increment();
+                        super.onClose(status, trailers);
+                    }
+                }, headers);
+            }
+        };
+    }
+}
@@ -0,0 +1,39 @@
+package org.example.grpc;
+
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Переходник от ListenableFuture (future-стаб gRPC) к CompletableFuture.
+ */
+final class GrpcFutures {
+
+    private GrpcFutures() {
+    }
+
+    static <T> CompletableFuture<T> toCompletableFuture(ListenableFuture<T> listenableFuture) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        Futures.addCallback(listenableFuture, new FutureCallback<>() {
+            @Override
+            public void onSuccess(T value) {
+                result.complete(value);
+            }
+
+            @Override
+            public void onFailure(Throwable t) {
+                result.completeExceptionally(t);
+            }
+        }, MoreExecutors.directExecutor());
+        // отмена (например, по таймауту асинхронного запроса MVC) отменяет и вызов gRPC
+        result.whenComplete((value, ex) -> {
+            if (result.isCancelled()) {
+                listenableFuture.cancel(true);
+            }
+        });
+        return result;
+    }
+}
@@ -0,0 +1,89 @@
+package org.example.grpc;
+
+import org.example.dto.ReviewDto;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Склейка одиночных запросов отзывов в пакетные (в духе DataLoader).
+ * Запросы, пришедшие в течение окна windowMs, или первые maxBatchSize id
+ * уходят одним вызовом batchGet; повторные запросы одного id внутри окна получают общий future.
+ */
+final class ReviewBatchLoader {
+
+    private final Function<List<String>, CompletableFuture<Map<String, ReviewDto>>> batchGet;
+    private final ScheduledExecutorService scheduler;
+    private final long windowMs;
+    private final int maxBatchSize;
+
+    private Map<String, CompletableFuture<Optional<ReviewDto>>> pending = new LinkedHashMap<>();
+
+    ReviewBatchLoader(Function<List<String>, CompletableFuture<Map<String, ReviewDto>>> batchGet,
+                      ScheduledExecutorService scheduler,
+                      long windowMs,
+                      int maxBatchSize) {
+        this.batchGet = batchGet;
+        this.scheduler = scheduler;
+        this.windowMs = windowMs;
+        this.maxBatchSize = maxBatchSize;
+    }
+
+    CompletableFuture<Optional<ReviewDto>> load(String id) {
+        Map<String, CompletableFuture<Optional<ReviewDto>>> full = null;
+        CompletableFuture<Optional<ReviewDto>> result;
+        synchronized (this) {
+            result = pending.get(id);
+            if (result != null) {
+                return result;
+            }
+            result = new CompletableFuture<>();
+            pending.put(id, result);
+            if (pending.size() >= maxBatchSize) {
+                full = takePending();
+            } else if (pending.size() == 1) {
+                // первый запрос окна планирует отправку всего окна
+                scheduler.schedule(this::flush, windowMs, TimeUnit.MILLISECONDS);
+            }
+        }
+        if (full != null) {
+            dispatch(full);
+        }
+        return result;
+    }
+
+    private void flush() {
+        Map<String, CompletableFuture<Optional<ReviewDto>>> batch;
+        synchronized (this) {
+            if (pending.isEmpty()) {
+                return;
+            }
+            batch = takePending();
+        }
+        dispatch(batch);
+    }
+
+    private Map<String, CompletableFuture<Optional<ReviewDto>>> takePending() {
+        Map<String, CompletableFuture<Optional<ReviewDto>>> batch = pending;
+        pending = new LinkedHashMap<>();
+        return batch;
+    }
+
+    private void dispatch(Map<String, CompletableFuture<Optional<ReviewDto>>> batch) {
+        batchGet.apply(new ArrayList<>(batch.keySet())).whenComplete((found, ex) ->
+                batch.forEach((id, future) -> {
+                    if (ex != null) {
+                        future.completeExceptionally(ex);
+                    } else {
+                        future.complete(Optional.ofNullable(found.get(id)));
+                    }
+                }));
+    }
+}
@@ -1,14 +1,41 @@
 package org.example.grpc;
 
+import com.google.common.util.concurrent.ListenableFuture;
+import io.grpc.Context;
+import io.grpc.Status;
+import io.grpc.stub.ClientCallStreamObserver;
+import io.grpc.stub.ClientResponseObserver;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
 import org.example.domainservice.*;
+import org.example.dto.BulkImportResultDto;
+import org.example.dto.ClientRatingStatsDto;
+import org.example.dto.CommentMatchDto;
 import org.example.dto.NewReviewRequest;
+import org.example.dto.RatingStatsDto;
 import org.example.dto.ReviewDto;
+import org.example.dto.ReviewPageDto;
+import org.example.service.AdaptiveConcurrencyLimiter;
+import org.example.service.LimitExceededException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
 @Service
@@ -16,71 +43,291 @@ public class ReviewGrpcClient {
     private static final Logger log = LoggerFactory.getLogger(ReviewGrpcClient.class);
 
     private final ReviewServiceGrpc.ReviewServiceBlockingStub reviewStub;
+    private final ReviewServiceGrpc.ReviewServiceFutureStub reviewFutureStub;
+    private final ReviewServiceGrpc.ReviewServiceStub reviewAsyncStub;
+    private final AdaptiveConcurrencyLimiter readLimiter;
+    private final long deadlineMs;
+    private final ReviewBatchLoader batchLoader;
+    private final ScheduledExecutorService batchScheduler;
+    private final DistributionSummary batchSizes;
 
-    public ReviewGrpcClient(ReviewServiceGrpc.ReviewServiceBlockingStub reviewStub) {
+    public ReviewGrpcClient(ReviewServiceGrpc.ReviewServiceBlockingStub reviewStub,
+                            ReviewServiceGrpc.ReviewServiceFutureStub reviewFutureStub,
+                            ReviewServiceGrpc.ReviewServiceStub reviewAsyncStub,
+                            @Qualifier("readLimiter") AdaptiveConcurrencyLimiter readLimiter,
+                            MeterRegistry meterRegistry,
+                            @Value("${grpc.client.deadline-ms}") long deadlineMs,
+                            @Value("${grpc.batch.enabled}") boolean batchEnabled,
+                            @Value("${grpc.batch.window-ms}") long batchWindowMs,
+                            @Value("${grpc.batch.max-size}") int batchMaxSize) {
         this.reviewStub = reviewStub;
+        this.reviewFutureStub = reviewFutureStub;
+        this.reviewAsyncStub = reviewAsyncStub;
+        this.readLimiter = readLimiter;
+        this.deadlineMs = deadlineMs;
+        this.batchSizes = DistributionSummary.builder("grpc.batch.size")
+                .description("Number of ids per BatchGetReviews call")
+                .register(meterRegistry);
+        if (batchEnabled) {
+            this.batchScheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "review-batch-loader");
+                thread.setDaemon(true);
+                return thread;
+            });
+            this.batchLoader = new ReviewBatchLoader(this::batchGetReviews, batchScheduler, batchWindowMs, batchMaxSize);
+        } else {
+            this.batchScheduler = null;
+            this.batchLoader = null;
+        }
     }
 
-    public Optional<ReviewDto> getReviewById(String id) {
+    /**
+     * Асинхронное получение отзыва: поток запроса не ждёт ответа domain-service.
+     * При включённой склейке параллельные запросы объединяются в один BatchGetReviews.
+     */
+    public CompletableFuture<Optional<ReviewDto>> getReviewById(String id) {
+        if (batchLoader != null) {
+            log.debug("Queueing review ID: {} for batch lookup", id);
+            return batchLoader.load(id);
+        }
         log.info("Getting review by ID: {}", id);
         GetReviewRequest request = GetReviewRequest.newBuilder()
                 .setId(id)
                 .build();
-        ReviewResponse response = reviewStub.getReview(request);
 
-        if (response.equals(ReviewResponse.getDefaultInstance())) {
-            log.debug("Review not found with ID: {}", id);
-            return Optional.empty();
-        }
+        return limitedRead(() -> futureStub().getReview(request))
+                .thenApply(response -> {
+                    if (response.equals(ReviewResponse.getDefaultInstance())) {
+                        log.debug("Review not found with ID: {}", id);
+                        return Optional.empty();
+                    }
+                    return Optional.of(convertToDto(response));
+                });
+    }
+
+    /**
+     * Получение нескольких отзывов одним вызовом. Отсутствующих id в результате нет.
+     */
+    public CompletableFuture<Map<String, ReviewDto>> batchGetReviews(List<String> ids) {
+        log.info("Getting {} reviews in one batch", ids.size());
+        batchSizes.record(ids.size());
+        BatchGetReviewsRequest request = BatchGetReviewsRequest.newBuilder()
+                .addAllIds(ids)
+                .build();
+
+        return limitedRead(() -> futureStub().batchGetReviews(request))
+                .thenApply(response -> {
+                    Map<String, ReviewDto> found = new HashMap<>(response.getReviewsCount() * 2);
+                    for (ReviewResponse review : response.getReviewsList()) {
+                        found.put(review.getId(), convertToDto(review));
+                    }
+                    return found;
+                });
+    }
 
-        return Optional.of(convertToDto(response));
+    public CompletableFuture<ReviewPageDto> getReviewsPage(int limit, String cursor) {
+        log.info("Getting reviews page: limit={}, cursor={}", limit, cursor);
+        GetAllReviewsRequest request = GetAllReviewsRequest.newBuilder()
+                .setPageSize(limit)
+                .setPageToken(cursor == null ? "" : cursor)
+                .build();
+
+        return limitedRead(() -> futureStub().getAllReviews(request))
+                .thenApply(response -> {
+                    List<ReviewDto> items = response.getReviewsList().stream()
+                            .map(this::convertToDto)
+                            .collect(Collectors.toList());
+                    String nextCursor = response.getNextPageToken().isEmpty() ? null : response.getNextPageToken();
+                    return new ReviewPageDto(items, nextCursor);
+                });
     }
 
-    public List<ReviewDto> getAllReviews() {
-        log.info("Getting all reviews");
-        GetAllReviewsRequest request = GetAllReviewsRequest.newBuilder().build();
-        GetAllReviewsResponse response = reviewStub.getAllReviews(request);
+    /**
+     * Поиск по клиенту и диапазону оценок с keyset-пагинацией по (rating, id).
+     *
+     * @param client    клиент или null.
+     * @param minRating нижняя граница оценки или null.
+     * @param maxRating верхняя граница оценки или null.
+     */
+    public CompletableFuture<ReviewPageDto> searchReviews(String client, Integer minRating, Integer maxRating,
+                                                          int limit, String cursor) {
+        log.info("Searching reviews: client={}, minRating={}, maxRating={}, limit={}, cursor={}",
+                client, minRating, maxRating, limit, cursor);
+        SearchReviewsRequest.Builder request = SearchReviewsRequest.newBuilder()
+                .setClient(client == null ? "" : client)
+                .setPageSize(limit)
+                .setPageToken(cursor == null ? "" : cursor);
+        if (minRating != null) {
+            request.setMinRating(minRating);
+        }
+        if (maxRating != null) {
+            request.setMaxRating(maxRating);
+        }
 
-        return response.getReviewsList().stream()
-                .map(this::convertToDto)
-                .collect(Collectors.toList());
+        return limitedRead(() -> futureStub().searchReviews(request.build()))
+                .thenApply(response -> {
+                    List<ReviewDto> items = response.getReviewsList().stream()
+                            .map(this::convertToDto)
+                            .collect(Collectors.toList());
+                    String nextCursor = response.getNextPageToken().isEmpty() ? null : response.getNextPageToken();
+                    return new ReviewPageDto(items, nextCursor);
+                });
     }
 
-    public ReviewDto createReview(NewReviewRequest request) {
-        log.info("Creating new review for client: {}", request.getClient());
-        CreateReviewRequest grpcReq = CreateReviewRequest.newBuilder()
-                .setClient(request.getClient())
-                .setRating(request.getRating())
-                .setComment(request.getComment())
+    /**
+     * Поиск по словам комментария и клиента; возвращает ID и релевантность без тел отзывов.
+     */
+    public CompletableFuture<List<CommentMatchDto>> searchComments(String query, int limit) {
+        log.info("Searching comments: query={}, limit={}", query, limit);
+        SearchCommentsRequest request = SearchCommentsRequest.newBuilder()
+                .setQuery(query)
+                .setLimit(limit)
                 .build();
-        CreateReviewResponse response = reviewStub.createReview(grpcReq);
-        return getReviewById(response.getId()).orElseThrow();
+
+        return limitedRead(() -> futureStub().searchComments(request))
+                .thenApply(response -> response.getMatchesList().stream()
+                        .map(match -> new CommentMatchDto(match.getId(), match.getScore()))
+                        .collect(Collectors.toList()));
     }
 
-    public Optional<ReviewDto> updateReview(String id, NewReviewRequest request) {
-        log.info("Updating review with ID: {}", id);
-        UpdateReviewRequest grpcReq = UpdateReviewRequest.newBuilder()
-                .setId(id)
-                .setClient(request.getClient())
-                .setRating(request.getRating())
-                .setComment(request.getComment())
+    /**
+     * Агрегаты оценок, которые domain-service поддерживает в памяти.
+     *
+     * @param client клиент или null для всех отзывов.
+     */
+    public CompletableFuture<RatingStatsDto> getRatingStats(String client) {
+        log.info("Getting rating stats for client: {}", client);
+        GetRatingStatsRequest request = GetRatingStatsRequest.newBuilder()
+                .setClient(client == null ? "" : client)
                 .build();
-        UpdateReviewResponse response = reviewStub.updateReview(grpcReq);
 
-        if (response.getSuccess()) {
-            return getReviewById(id);
-        } else {
-            return Optional.empty();
+        return limitedRead(() -> futureStub().getRatingStats(request))
+                .thenApply(response -> new RatingStatsDto(
+                        response.getCount(),
+                        response.getAverage(),
+                        new TreeMap<>(response.getHistogramMap()),
+                        response.getClientsList().stream()
+                                .map(c -> new ClientRatingStatsDto(c.getClient(), c.getCount(), c.getAverage()))
+                                .collect(Collectors.toList())));
+    }
+
+    /**
+     * Вызов domain-service под пределом чтений: сверх предела - сразу {@link LimitExceededException}.
+     * Таймауты и недоступность снижают предел.
+     */
+    private <T> CompletableFuture<T> limitedRead(Supplier<ListenableFuture<T>> call) {
+        return readLimiter.execute(() -> GrpcFutures.toCompletableFuture(call.get()), ReviewGrpcClient::isOverload);
+    }
+
+    private static boolean isOverload(Throwable ex) {
+        Status.Code code = Status.fromThrowable(ex).getCode();
+        return code == Status.Code.DEADLINE_EXCEEDED
+                || code == Status.Code.UNAVAILABLE
+                || code == Status.Code.RESOURCE_EXHAUSTED;
+    }
+
+    private ReviewServiceGrpc.ReviewServiceFutureStub futureStub() {
+        return reviewFutureStub.withDeadlineAfter(deadlineMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Получатель записей потоковой выгрузки.
+     */
+    @FunctionalInterface
+    public interface ReviewSink {
+        void accept(ReviewResponse review) throws IOException;
+    }
+
+    /**
+     * Потоковая выгрузка всех отзывов. Блокирующий итератор запрашивает у сервера
+     * следующее сообщение только после чтения предыдущего, поэтому скорость выгрузки
+     * определяется получателем. Если получатель падает (например, клиент HTTP отключился),
+     * вызов gRPC отменяется.
+     */
+    public void streamReviews(ReviewSink sink) throws IOException {
+        log.info("Streaming all reviews");
+        Context.CancellableContext context = Context.current().withCancellation();
+        Context previous = context.attach();
+        try {
+            Iterator<ReviewResponse> reviews = reviewStub.streamReviews(StreamReviewsRequest.getDefaultInstance());
+            while (reviews.hasNext()) {
+                sink.accept(reviews.next());
+            }
+        } finally {
+            context.detach(previous);
+            context.cancel(null);
         }
     }
 
-    public boolean deleteReview(String id) {
-        log.info("Deleting review with ID: {}", id);
-        DeleteReviewRequest request = DeleteReviewRequest.newBuilder()
-                .setId(id)
-                .build();
-        DeleteReviewResponse response = reviewStub.deleteReview(request);
-        return response.getSuccess();
+    /**
+     * Потоковая загрузка отзывов одним вызовом BulkCreateReviews. Записи отправляются из onReadyHandler,
+     * пока транспорт готов их принять (isReady), поэтому источник читается со скоростью записи
+     * в domain-service и не накапливается в памяти, а поток запроса не ждёт окончания загрузки.
+     * Вызов без дедлайна: загрузка может идти минуты.
+     */
+    public CompletableFuture<BulkImportResultDto> bulkCreateReviews(Iterator<NewReviewRequest> reviews) {
+        log.info("Starting bulk review import");
+        CompletableFuture<BulkImportResultDto> result = new CompletableFuture<>();
+        reviewAsyncStub.bulkCreateReviews(new ClientResponseObserver<CreateReviewRequest, BulkCreateReviewsResponse>() {
+            private ClientCallStreamObserver<CreateReviewRequest> requests;
+            private long sent;
+            private boolean completed;
+
+            @Override
+            public void beforeStart(ClientCallStreamObserver<CreateReviewRequest> requestStream) {
+                requests = requestStream;
+                requestStream.setOnReadyHandler(this::sendWhileReady);
+            }
+
+            /**
+             * Обработчики onReady одного вызова выполняются последовательно, повторный вход невозможен.
+             */
+            private void sendWhileReady() {
+                try {
+                    while (!completed && requests.isReady()) {
+                        if (!reviews.hasNext()) {
+                            completed = true;
+                            requests.onCompleted();
+                            return;
+                        }
+                        NewReviewRequest review = reviews.next();
+                        requests.onNext(CreateReviewRequest.newBuilder()
+                                .setClient(review.getClient() == null ? "" : review.getClient())
+                                .setRating(review.getRating())
+                                .setComment(review.getComment() == null ? "" : review.getComment())
+                                .build());
+                        sent++;
+                    }
+                } catch (RuntimeException e) {
+                    completed = true;
+                    result.completeExceptionally(e);
+                    requests.cancel("Bulk import aborted", e);
+                }
+            }
+
+            @Override
+            public void onNext(BulkCreateReviewsResponse response) {
+                log.info("Bulk import finished: sent={}, inserted={}, failed={}", sent, response.getInserted(), response.getFailed());
+                result.complete(new BulkImportResultDto(response.getInserted(), response.getFailed()));
+            }
+
+            @Override
+            public void onError(Throwable t) {
+                result.completeExceptionally(t);
+            }
+
+            @Override
+            public void onCompleted() {
+            }
+        });
+        return result;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (batchScheduler != null) {
+            batchScheduler.shutdown();
+        }
     }
 
     private ReviewDto convertToDto(ReviewResponse r) {
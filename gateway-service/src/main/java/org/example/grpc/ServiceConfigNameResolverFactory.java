@@ -0,0 +1,69 @@
+package org.example.grpc;
+
+import io.grpc.NameResolver;
+import io.grpc.Status;
+
+import java.net.URI;
+import java.util.Map;
+
+/**
+ * Имена разрешает delegate, service config в каждом результате - заданный. Нужен вместо
+ * {@code defaultServiceConfig}: канал grpc-java берёт retryThrottling только из service config,
+ * отличного от исходного, поэтому бюджет повторов из defaultServiceConfig не действует,
+ * если резолвер свой service config не возвращает (DNS, static).
+ */
+public class ServiceConfigNameResolverFactory extends NameResolver.Factory {
+
+    private final NameResolver.Factory delegate;
+    private final Map<String, ?> serviceConfig;
+
+    public ServiceConfigNameResolverFactory(NameResolver.Factory delegate, Map<String, ?> serviceConfig) {
+        this.delegate = delegate;
+        this.serviceConfig = serviceConfig;
+    }
+
+    @Override
+    public NameResolver newNameResolver(URI targetUri, NameResolver.Args args) {
+        NameResolver resolver = delegate.newNameResolver(targetUri, args);
+        if (resolver == null) {
+            return null;
+        }
+        NameResolver.ConfigOrError config = args.getServiceConfigParser().parseServiceConfig(serviceConfig);
+        return new NameResolver() {
+            @Override
+            public String getServiceAuthority() {
+                return resolver.getServiceAuthority();
+            }
+
+            @Override
+            public void start(Listener2 listener) {
+                resolver.start(new Listener2() {
+                    @Override
+                    public void onResult(ResolutionResult result) {
+                        listener.onResult(result.toBuilder().setServiceConfig(config).build());
+                    }
+
+                    @Override
+                    public void onError(Status error) {
+                        listener.onError(error);
+                    }
+                });
+            }
+
+            @Override
+            public void refresh() {
+                resolver.refresh();
+            }
+
+            @Override
+            public void shutdown() {
+                resolver.shutdown();
+            }
+        };
+    }
+
+    @Override
+    public String getDefaultScheme() {
+        return delegate.getDefaultScheme();
+    }
+}
@@ -0,0 +1,88 @@
+package org.example.grpc;
+
+import io.grpc.EquivalentAddressGroup;
+import io.grpc.NameResolver;
+import io.grpc.NameResolverProvider;
+import io.grpc.Status;
+
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Фиксированный список адресов domain-service: цель вида {@code static:///host1:9091,host2:9091}.
+ * Каждый адрес - отдельная подсеть (subchannel) для балансировщика; имена хостов разрешаются
+ * один раз при запуске канала, без повторного опроса DNS.
+ */
+public class StaticNameResolverProvider extends NameResolverProvider {
+
+    public static final String SCHEME = "static";
+
+    @Override
+    protected boolean isAvailable() {
+        return true;
+    }
+
+    @Override
+    protected int priority() {
+        return 5;
+    }
+
+    @Override
+    public String getDefaultScheme() {
+        return SCHEME;
+    }
+
+    @Override
+    protected Collection<Class<? extends SocketAddress>> getProducedSocketAddressTypes() {
+        return List.of(InetSocketAddress.class);
+    }
+
+    @Override
+    public NameResolver newNameResolver(URI targetUri, NameResolver.Args args) {
+        if (!SCHEME.equals(targetUri.getScheme())) {
+            return null;
+        }
+        String path = targetUri.getPath();
+        String authority = path.startsWith("/") ? path.substring(1) : path;
+        return new NameResolver() {
+            @Override
+            public String getServiceAuthority() {
+                return authority;
+            }
+
+            @Override
+            public void start(Listener2 listener) {
+                List<EquivalentAddressGroup> groups = new ArrayList<>();
+                try {
+                    for (String address : authority.split(",")) {
+                        String hostPort = address.trim();
+                        if (hostPort.isEmpty()) {
+                            continue;
+                        }
+                        int colon = hostPort.lastIndexOf(':');
+                        groups.add(new EquivalentAddressGroup(new InetSocketAddress(
+                                hostPort.substring(0, colon), Integer.parseInt(hostPort.substring(colon + 1)))));
+                    }
+                } catch (RuntimeException e) {
+                    listener.onError(Status.INVALID_ARGUMENT
+                            .withDescription("Malformed static target: " + targetUri)
+                            .withCause(e));
+                    return;
+                }
+                if (groups.isEmpty()) {
+                    listener.onError(Status.INVALID_ARGUMENT.withDescription("No addresses in target: " + targetUri));
+                    return;
+                }
+                listener.onResult(ResolutionResult.newBuilder().setAddresses(groups).build());
+            }
+
+            @Override
+            public void shutdown() {
+            }
+        };
+    }
+}
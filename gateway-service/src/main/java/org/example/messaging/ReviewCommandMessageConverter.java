@@ -0,0 +1,47 @@
+package org.example.messaging;
+
+import com.google.protobuf.InvalidProtocolBufferException;
+import org.example.domainservice.ReviewCommand;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.support.converter.MessageConversionException;
+import org.springframework.amqp.support.converter.MessageConverter;
+
+/**
+ * Конвертер сообщений канала gateway -> domain-service:
+ * {@link ReviewCommand} сериализуется в protobuf без промежуточных строк.
+ */
+public class ReviewCommandMessageConverter implements MessageConverter {
+
+    public static final String CONTENT_TYPE = "application/x-protobuf";
+    public static final String SCHEMA_VERSION_HEADER = "x-schema-version";
+    public static final int SCHEMA_VERSION = 1;
+
+    @Override
+    public Message toMessage(Object object, MessageProperties messageProperties) {
+        if (!(object instanceof ReviewCommand command)) {
+            throw new MessageConversionException("Unsupported payload type: " + object.getClass().getName());
+        }
+        messageProperties.setContentType(CONTENT_TYPE);
+        messageProperties.setHeader(SCHEMA_VERSION_HEADER, command.getSchemaVersion());
+        if (!command.getMessageId().isEmpty()) {
+            messageProperties.setMessageId(command.getMessageId());
+        }
+        byte[] body = command.toByteArray();
+        messageProperties.setContentLength(body.length);
+        return new Message(body, messageProperties);
+    }
+
+    @Override
+    public Object fromMessage(Message message) {
+        String contentType = message.getMessageProperties().getContentType();
+        if (!CONTENT_TYPE.equals(contentType)) {
+            throw new MessageConversionException("Unsupported content type: " + contentType);
+        }
+        try {
+            return ReviewCommand.parseFrom(message.getBody());
+        } catch (InvalidProtocolBufferException e) {
+            throw new MessageConversionException("Malformed ReviewCommand", e);
+        }
+    }
+}
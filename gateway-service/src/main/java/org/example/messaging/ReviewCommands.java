@@ -0,0 +1,77 @@
+package org.example.messaging;
+
+import org.example.domainservice.CreateReviewRequest;
+import org.example.domainservice.DeleteReviewRequest;
+import org.example.domainservice.ReviewCommand;
+import org.example.domainservice.UpdateReviewRequest;
+import org.example.dto.NewReviewRequest;
+
+import java.nio.ByteBuffer;
+import java.security.SecureRandom;
+import java.util.HexFormat;
+import java.util.UUID;
+
+/**
+ * Фабрика команд записи для отправки в domain-service.
+ */
+public final class ReviewCommands {
+
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    private ReviewCommands() {
+    }
+
+    /**
+     * @param id ID нового отзыва, см. {@link #newReviewId()}.
+     */
+    public static ReviewCommand create(String id, NewReviewRequest request) {
+        return envelope()
+                .setCreate(CreateReviewRequest.newBuilder()
+                        .setId(id)
+                        .setClient(nullToEmpty(request.getClient()))
+                        .setRating(request.getRating())
+                        .setComment(nullToEmpty(request.getComment())))
+                .build();
+    }
+
+    public static ReviewCommand update(String id, NewReviewRequest request) {
+        return envelope()
+                .setUpdate(UpdateReviewRequest.newBuilder()
+                        .setId(id)
+                        .setClient(nullToEmpty(request.getClient()))
+                        .setRating(request.getRating())
+                        .setComment(nullToEmpty(request.getComment())))
+                .build();
+    }
+
+    public static ReviewCommand delete(String id) {
+        return envelope()
+                .setDelete(DeleteReviewRequest.newBuilder().setId(id))
+                .build();
+    }
+
+    /**
+     * ID нового отзыва в формате ObjectId (24 hex-символа): 4 байта времени в секундах и 8 случайных байт.
+     * ID назначается в gateway, чтобы ответ на создание мог сослаться на отзыв до его записи в MongoDB,
+     * а повторная доставка команды не создавала дубликат.
+     */
+    public static String newReviewId() {
+        byte[] bytes = new byte[12];
+        ByteBuffer.wrap(bytes).putInt((int) (System.currentTimeMillis() / 1000));
+        byte[] random = new byte[8];
+        RANDOM.nextBytes(random);
+        System.arraycopy(random, 0, bytes, 4, random.length);
+        return HexFormat.of().formatHex(bytes);
+    }
+
+    private static ReviewCommand.Builder envelope() {
+        return ReviewCommand.newBuilder()
+                .setSchemaVersion(ReviewCommandMessageConverter.SCHEMA_VERSION)
+                .setMessageId(UUID.randomUUID().toString())
+                .setTimestamp(System.currentTimeMillis());
+    }
+
+    private static String nullToEmpty(String value) {
+        return value == null ? "" : value;
+    }
+}
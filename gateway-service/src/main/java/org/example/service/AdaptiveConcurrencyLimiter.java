@@ -0,0 +1,164 @@
+package org.example.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.LongSupplier;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+/**
+ * Адаптивный предел числа одновременных вызовов (градиентный алгоритм по времени ответа).
+ * Минимальное RTT сравнивается со средним RTT последнего окна вызовов: пока они близки, предел растёт
+ * на величину допустимой очереди (√limit); когда ответы замедляются, предел уменьшается
+ * пропорционально замедлению, а при таймаутах и отказах - мультипликативно.
+ * Вызовы сверх предела отклоняются сразу, без ожидания.
+ */
+public class AdaptiveConcurrencyLimiter {
+
+    // допустимое замедление относительно минимального RTT до начала снижения предела
+    private static final double RTT_TOLERANCE = 1.5;
+    private static final double SMOOTHING = 0.2;
+    private static final double DROP_BACKOFF = 0.9;
+    private static final int MIN_WINDOW_SAMPLES = 10;
+    private static final int MIN_RTT_RESET_WINDOWS = 200;
+
+    private final String name;
+    private final int minLimit;
+    private final int maxLimit;
+    private final long retryAfterSeconds;
+    private final LongSupplier nanoClock;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final Counter rejected;
+
+    private volatile double limit;
+    private double minRtt;
+    private int windows;
+    private long windowRttSum;
+    private int windowSamples;
+    private int windowMaxInFlight;
+
+    public AdaptiveConcurrencyLimiter(String name, int initialLimit, int minLimit, int maxLimit,
+                                      long retryAfterSeconds, MeterRegistry meterRegistry) {
+        this(name, initialLimit, minLimit, maxLimit, retryAfterSeconds, meterRegistry, System::nanoTime);
+    }
+
+    /**
+     * @param nanoClock источник времени для RTT (в тестах - управляемый).
+     */
+    AdaptiveConcurrencyLimiter(String name, int initialLimit, int minLimit, int maxLimit,
+                               long retryAfterSeconds, MeterRegistry meterRegistry, LongSupplier nanoClock) {
+        this.name = name;
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.retryAfterSeconds = retryAfterSeconds;
+        this.nanoClock = nanoClock;
+        this.limit = Math.max(minLimit, Math.min(maxLimit, initialLimit));
+
+        Gauge.builder("gateway.concurrency.limit", this, AdaptiveConcurrencyLimiter::getLimit)
+                .description("Current adaptive concurrency limit")
+                .tag("type", name)
+                .register(meterRegistry);
+        Gauge.builder("gateway.concurrency.inflight", inFlight, AtomicInteger::get)
+                .description("Calls currently holding a concurrency permit")
+                .tag("type", name)
+                .register(meterRegistry);
+        this.rejected = Counter.builder("gateway.concurrency.rejected")
+                .description("Calls rejected by the concurrency limit")
+                .tag("type", name)
+                .register(meterRegistry);
+    }
+
+    public int getLimit() {
+        return (int) limit;
+    }
+
+    /**
+     * Выполнение вызова под пределом.
+     *
+     * @param call    асинхронный вызов; не выполняется, если предел достигнут.
+     * @param dropped ошибки перегрузки (таймаут, недоступность), после которых предел снижается.
+     * @return результат вызова или future с {@link LimitExceededException}.
+     */
+    public <T> CompletableFuture<T> execute(Supplier<CompletableFuture<T>> call, Predicate<Throwable> dropped) {
+        int startInFlight = tryAcquire();
+        if (startInFlight < 0) {
+            rejected.increment();
+            return CompletableFuture.failedFuture(new LimitExceededException(
+                    "Concurrency limit " + getLimit() + " reached for " + name + " calls", retryAfterSeconds));
+        }
+
+        long start = nanoClock.getAsLong();
+        CompletableFuture<T> result;
+        try {
+            result = call.get();
+        } catch (RuntimeException e) {
+            inFlight.decrementAndGet();
+            return CompletableFuture.failedFuture(e);
+        }
+        return result.whenComplete((value, ex) -> {
+            inFlight.decrementAndGet();
+            if (ex == null) {
+                onSample(nanoClock.getAsLong() - start, startInFlight);
+            } else if (dropped.test(ex)) {
+                onDropped();
+            }
+        });
+    }
+
+    /**
+     * @return число вызовов в работе с учётом нового или -1, если предел достигнут.
+     */
+    private int tryAcquire() {
+        while (true) {
+            int current = inFlight.get();
+            if (current >= (int) limit) {
+                return -1;
+            }
+            if (inFlight.compareAndSet(current, current + 1)) {
+                return current + 1;
+            }
+        }
+    }
+
+    private synchronized void onSample(long rttNanos, int startInFlight) {
+        windowRttSum += rttNanos;
+        windowMaxInFlight = Math.max(windowMaxInFlight, startInFlight);
+        // предел пересчитывается раз в окно - примерно один «оборот» вызовов в работе, иначе
+        // пачка ответов, пришедших после одного замедления, снижает его многократно
+        if (++windowSamples < Math.max(MIN_WINDOW_SAMPLES, (int) limit)) {
+            return;
+        }
+        double rtt = (double) windowRttSum / windowSamples;
+        int maxInFlight = windowMaxInFlight;
+        windowRttSum = 0;
+        windowSamples = 0;
+        windowMaxInFlight = 0;
+
+        // минимальное RTT - время ответа без очереди; периодически сбрасывается,
+        // чтобы следовать за изменением самого domain-service
+        if (++windows >= MIN_RTT_RESET_WINDOWS) {
+            windows = 0;
+            minRtt = rtt;
+        } else if (minRtt == 0 || rtt < minRtt) {
+            minRtt = rtt;
+        }
+
+        double current = limit;
+        double gradient = Math.max(0.5, Math.min(1.0, RTT_TOLERANCE * minRtt / rtt));
+        double newLimit = current * gradient + Math.sqrt(current);
+        // предел не растёт, если вызовов в работе намного меньше: нагрузка его не проверяет
+        if (newLimit > current && maxInFlight < current / 2) {
+            return;
+        }
+        newLimit = current * (1 - SMOOTHING) + newLimit * SMOOTHING;
+        limit = Math.max(minLimit, Math.min(maxLimit, newLimit));
+    }
+
+    private synchronized void onDropped() {
+        limit = Math.max(minLimit, limit * DROP_BACKOFF);
+    }
+}
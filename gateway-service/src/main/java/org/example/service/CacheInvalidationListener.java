@@ -0,0 +1,26 @@
+package org.example.service;
+
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Принимает инвалидации из канала {@link RedisCacheService#INVALIDATION_CHANNEL}
+ * и сбрасывает соответствующие записи локального кеша этого экземпляра.
+ */
+@Component
+public class CacheInvalidationListener implements MessageListener {
+
+    private final RedisCacheService cacheService;
+
+    public CacheInvalidationListener(RedisCacheService cacheService) {
+        this.cacheService = cacheService;
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        cacheService.invalidateLocal(new String(message.getBody(), StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,21 @@
+package org.example.service;
+
+/**
+ * Вызов отклонён ограничителем параллельности: число вызовов в работе достигло текущего предела.
+ */
+public class LimitExceededException extends RuntimeException {
+
+    private final long retryAfterSeconds;
+
+    public LimitExceededException(String message, long retryAfterSeconds) {
+        super(message);
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+
+    /**
+     * @return через сколько секунд клиенту стоит повторить запрос.
+     */
+    public long getRetryAfterSeconds() {
+        return retryAfterSeconds;
+    }
+}
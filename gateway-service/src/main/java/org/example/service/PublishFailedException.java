@@ -0,0 +1,15 @@
+package org.example.service;
+
+/**
+ * Сообщение не было подтверждено брокером (nack, возврат, таймаут или переполнение очереди публикации).
+ */
+public class PublishFailedException extends RuntimeException {
+
+    public PublishFailedException(String message) {
+        super(message);
+    }
+
+    public PublishFailedException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
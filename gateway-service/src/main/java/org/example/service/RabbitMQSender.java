@@ -1,34 +1,215 @@
 package org.example.service;
 
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import org.example.domainservice.ReviewCommand;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.amqp.rabbit.connection.CorrelationData;
 import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Асинхронная публикация команд с подтверждениями брокера (publisher confirms).
+ * Команды из параллельных запросов копятся в очереди, отдельный поток публикует их
+ * пачками в одном канале. Число неподтверждённых сообщений ограничено окном max-in-flight.
+ */
 @Service
 public class RabbitMQSender {
     private static final Logger log = LoggerFactory.getLogger(RabbitMQSender.class);
 
+    private record PendingPublish(ReviewCommand command, CompletableFuture<Void> result, long startNanos) {
+    }
+
     private final RabbitTemplate rabbitTemplate;
+    private final String exchange;
+    private final String routingKey;
+    private final int batchSize;
+    private final long confirmTimeoutMs;
 
-    @Value("${rabbitmq.exchange}")
-    private String exchange;
+    private final BlockingQueue<PendingPublish> pending;
+    private final Semaphore inFlightWindow;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final ExecutorService callbackExecutor;
+    private final Thread publisherThread;
+    private volatile boolean running = true;
 
-    @Value("${rabbitmq.routing.key}")
-    private String routingKey;
+    private final AdaptiveConcurrencyLimiter writeLimiter;
+    private final Timer publishLatency;
+    private final Counter acked;
+    private final Counter nacked;
+    private final Counter failed;
 
-    public RabbitMQSender(RabbitTemplate rabbitTemplate) {
+    public RabbitMQSender(RabbitTemplate rabbitTemplate,
+                          MeterRegistry meterRegistry,
+                          @Qualifier("writeLimiter") AdaptiveConcurrencyLimiter writeLimiter,
+                          @Value("${rabbitmq.exchange}") String exchange,
+                          @Value("${rabbitmq.routing.key}") String routingKey,
+                          @Value("${rabbitmq.publisher.batch-size}") int batchSize,
+                          @Value("${rabbitmq.publisher.max-in-flight}") int maxInFlight,
+                          @Value("${rabbitmq.publisher.queue-capacity}") int queueCapacity,
+                          @Value("${rabbitmq.publisher.confirm-timeout-ms}") long confirmTimeoutMs) {
         this.rabbitTemplate = rabbitTemplate;
+        this.writeLimiter = writeLimiter;
+        this.exchange = exchange;
+        this.routingKey = routingKey;
+        this.batchSize = batchSize;
+        this.confirmTimeoutMs = confirmTimeoutMs;
+        this.pending = new ArrayBlockingQueue<>(queueCapacity);
+        this.inFlightWindow = new Semaphore(maxInFlight);
+        this.callbackExecutor = Executors.newFixedThreadPool(2, r -> {
+            Thread thread = new Thread(r, "rabbit-confirm-callback");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        this.publishLatency = Timer.builder("rabbitmq.publish.latency")
+                .description("Time from enqueue to broker confirm")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        this.acked = confirmCounter(meterRegistry, "ack");
+        this.nacked = confirmCounter(meterRegistry, "nack");
+        this.failed = confirmCounter(meterRegistry, "error");
+        Gauge.builder("rabbitmq.publish.inflight", inFlight, AtomicInteger::get).register(meterRegistry);
+        Gauge.builder("rabbitmq.publish.queued", pending, BlockingQueue::size).register(meterRegistry);
+
+        this.publisherThread = new Thread(this::runPublisher, "rabbit-publisher");
+        this.publisherThread.setDaemon(true);
+        this.publisherThread.start();
+    }
+
+    /**
+     * Ставит команду в очередь публикации.
+     *
+     * @return future, завершающийся после подтверждения брокером,
+     * либо с {@link PublishFailedException}, если сообщение не было принято,
+     * либо с {@link LimitExceededException}, если достигнут предел записей в работе.
+     */
+    public CompletableFuture<Void> sendMessage(ReviewCommand command) {
+        // время до подтверждения брокером - RTT для предела; неподтверждённые публикации его снижают
+        return writeLimiter.execute(() -> enqueue(command), ex -> ex instanceof PublishFailedException);
+    }
+
+    private CompletableFuture<Void> enqueue(ReviewCommand command) {
+        log.info("Queueing {} command {} for RabbitMQ", command.getCommandCase(), command.getMessageId());
+        CompletableFuture<Void> result = new CompletableFuture<>();
+        if (!pending.offer(new PendingPublish(command, result, System.nanoTime()))) {
+            failed.increment();
+            result.completeExceptionally(new PublishFailedException("Publish queue is full"));
+        }
+        return result;
+    }
+
+    private void runPublisher() {
+        List<PendingPublish> batch = new ArrayList<>(batchSize);
+        while (running) {
+            try {
+                batch.add(pending.take());
+                pending.drainTo(batch, batchSize - 1);
+                inFlightWindow.acquire(batch.size());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                batch.forEach(p -> fail(p, new PublishFailedException("Publisher stopped")));
+                return;
+            }
+            inFlight.addAndGet(batch.size());
+            publishBatch(batch);
+            batch.clear();
+        }
     }
 
-    public void sendMessage(Object message) {
-        log.info("Sending message to RabbitMQ: {}", message);
+    private void publishBatch(List<PendingPublish> batch) {
+        int[] sent = {0};
         try {
-            rabbitTemplate.convertAndSend(exchange, routingKey, message);
-            log.debug("Message sent successfully");
+            rabbitTemplate.invoke(operations -> {
+                for (PendingPublish publish : batch) {
+                    CorrelationData correlation = new CorrelationData(publish.command().getMessageId());
+                    operations.convertAndSend(exchange, routingKey, publish.command(), correlation);
+                    sent[0]++;
+                    correlation.getFuture()
+                            .orTimeout(confirmTimeoutMs, TimeUnit.MILLISECONDS)
+                            .whenComplete((confirm, ex) -> onConfirm(publish, correlation, confirm, ex));
+                }
+                return null;
+            });
+            log.debug("Published batch of {} messages", sent[0]);
         } catch (Exception e) {
-            log.error("Error sending message to RabbitMQ: {}", e.getMessage(), e);
+            log.error("Error sending batch to RabbitMQ: {}", e.getMessage(), e);
+            // сообщения, которые не ушли в канал, подтверждения не получат
+            for (int i = sent[0]; i < batch.size(); i++) {
+                release();
+                fail(batch.get(i), new PublishFailedException("Publish failed", e));
+            }
+        }
+    }
+
+    private void onConfirm(PendingPublish publish, CorrelationData correlation,
+                           CorrelationData.Confirm confirm, Throwable ex) {
+        release();
+        publishLatency.record(System.nanoTime() - publish.startNanos(), TimeUnit.NANOSECONDS);
+        PublishFailedException error = null;
+        if (ex != null) {
+            failed.increment();
+            error = new PublishFailedException(ex instanceof TimeoutException ? "Confirm timed out" : "Confirm failed", ex);
+        } else if (!confirm.isAck()) {
+            nacked.increment();
+            log.warn("Broker nacked message {}: {}", publish.command().getMessageId(), confirm.getReason());
+            error = new PublishFailedException("Broker nack: " + confirm.getReason());
+        } else if (correlation.getReturned() != null) {
+            failed.increment();
+            log.warn("Message {} was returned as unroutable", publish.command().getMessageId());
+            error = new PublishFailedException("Message returned: " + correlation.getReturned().getReplyText());
+        } else {
+            acked.increment();
         }
+        // колбэк вызывается в потоке соединения AMQP - продолжения запросов выполняем в своём пуле
+        PublishFailedException result = error;
+        callbackExecutor.execute(() -> {
+            if (result == null) {
+                publish.result().complete(null);
+            } else {
+                publish.result().completeExceptionally(result);
+            }
+        });
+    }
+
+    private void fail(PendingPublish publish, PublishFailedException e) {
+        failed.increment();
+        publish.result().completeExceptionally(e);
+    }
+
+    private void release() {
+        inFlight.decrementAndGet();
+        inFlightWindow.release();
+    }
+
+    private static Counter confirmCounter(MeterRegistry meterRegistry, String result) {
+        return Counter.builder("rabbitmq.publish.confirms")
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        running = false;
+        publisherThread.interrupt();
+        callbackExecutor.shutdown();
     }
 }
@@ -1,14 +1,42 @@
 package org.example.service;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.google.common.collect.Lists;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.example.domainservice.ReviewChanged;
 import org.example.dto.ReviewDto;
+import org.example.dto.ReviewPageDto;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Range;
+import org.springframework.data.redis.connection.Limit;
+import org.springframework.data.redis.connection.ReturnType;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisOperations;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.SessionCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ZSetOperations;
+import org.springframework.data.redis.serializer.RedisSerializer;
 import org.springframework.stereotype.Service;
 
-import java.util.Collections;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
 
 @Service
@@ -16,19 +44,255 @@ public class RedisCacheService {
     private static final Logger log = LoggerFactory.getLogger(RedisCacheService.class);
 
     private static final String REVIEW_CACHE_KEY_PREFIX = "review:";
-    private static final String ALL_REVIEWS_CACHE_KEY = "reviews:all";
+    // отметка об отсутствующем отзыве (negative caching)
+    private static final String MISSING_REVIEW_KEY_PREFIX = "review:missing:";
+    private static final Object MISSING = new Object();
+    // версия последнего применённого события об изменении отзыва
+    private static final String REVIEW_VERSION_KEY_PREFIX = "review:ver:";
+    // ETag тела отзыва, записывается вместе с телом и с тем же TTL
+    private static final String REVIEW_ETAG_KEY_PREFIX = "review:etag:";
+    // версия списка отзывов: увеличивается при каждом изменении индекса или тел отзывов
+    private static final String LIST_VERSION_KEY = "reviews:ver";
+
+    /**
+     * Увеличение версии списка; если ключа нет (первый запуск, сброс Redis) - текущее время в мс,
+     * чтобы новая версия не совпала с выданными раньше.
+     * KEYS: версия списка. ARGV: текущее время в мс.
+     */
+    private static final byte[] BUMP_LIST_VERSION_SCRIPT = (
+            "if redis.call('EXISTS', KEYS[1]) == 1 then return redis.call('INCR', KEYS[1]) end\n" +
+            "redis.call('SET', KEYS[1], ARGV[1])\n" +
+            "return tonumber(ARGV[1])").getBytes(StandardCharsets.UTF_8);
+
+    /**
+     * KEYS: тело, версия, индекс списка, отметка полноты индекса, отметка об отсутствии, ETag, версия списка.
+     * ARGV: версия события, значение (пусто - отзыв удалён), TTL тела, ID, TTL версии, TTL отметки об отсутствии,
+     * ETag, текущее время в мс.
+     */
+    private static final byte[] APPLY_CHANGE_SCRIPT = (
+            "local current = redis.call('GET', KEYS[2])\n" +
+            "if current and tonumber(current) >= tonumber(ARGV[1]) then return 0 end\n" +
+            "redis.call('SET', KEYS[2], ARGV[1], 'EX', ARGV[5])\n" +
+            "if ARGV[2] == '' then\n" +
+            "  redis.call('DEL', KEYS[1], KEYS[6])\n" +
+            "  redis.call('ZREM', KEYS[3], ARGV[4])\n" +
+            "  redis.call('SET', KEYS[5], '1', 'EX', ARGV[6])\n" +
+            "else\n" +
+            "  redis.call('SET', KEYS[1], ARGV[2], 'EX', ARGV[3])\n" +
+            "  redis.call('SET', KEYS[6], ARGV[7], 'EX', ARGV[3])\n" +
+            "  redis.call('DEL', KEYS[5])\n" +
+            "  if redis.call('EXISTS', KEYS[4]) == 1 then redis.call('ZADD', KEYS[3], 0, ARGV[4]) end\n" +
+            "end\n" +
+            "if redis.call('EXISTS', KEYS[7]) == 1 then redis.call('INCR', KEYS[7])\n" +
+            "else redis.call('SET', KEYS[7], ARGV[8]) end\n" +
+            "return 1").getBytes(StandardCharsets.UTF_8);
+
+    /**
+     * Запись значения, прочитанного при промахе, если по отзыву не было недавних событий.
+     * KEYS: тело, версия, ETag. ARGV: значение, TTL тела, ETag.
+     */
+    private static final byte[] FILL_SCRIPT = (
+            "if redis.call('EXISTS', KEYS[2]) == 1 then return 0 end\n" +
+            "redis.call('SET', KEYS[1], ARGV[1], 'EX', ARGV[2])\n" +
+            "redis.call('SET', KEYS[3], ARGV[3], 'EX', ARGV[2])\n" +
+            "return 1").getBytes(StandardCharsets.UTF_8);
+    /**
+     * Замена индекса списка построенным; пустой список - индекс удаляется, отметка полноты ставится.
+     * KEYS: построенный индекс, индекс списка, отметка полноты индекса. ARGV: TTL в секундах.
+     */
+    private static final byte[] COMPLETE_INDEX_SCRIPT = (
+            "if redis.call('EXISTS', KEYS[1]) == 1 then\n" +
+            "  redis.call('RENAME', KEYS[1], KEYS[2])\n" +
+            "  redis.call('EXPIRE', KEYS[2], ARGV[1])\n" +
+            "else redis.call('DEL', KEYS[2]) end\n" +
+            "redis.call('SET', KEYS[3], '1', 'EX', ARGV[1])\n" +
+            "return 1").getBytes(StandardCharsets.UTF_8);
+    // индекс списка: отсортированное множество ID всех отзывов и отметка о его полноте
+    public static final String REVIEW_IDS_KEY = "reviews:ids";
+    private static final String REVIEW_IDS_COMPLETE_KEY = "reviews:ids:complete";
+    private static final int PIPELINE_CHUNK_SIZE = 500;
+    // страницы результатов поиска: ID отзывов и курсор, тела - в ключах review:<id>
+    private static final String SEARCH_CACHE_KEY_PREFIX = "reviews:search:";
     private static final long CACHE_TTL_HOURS = 1L;
+    public static final String INVALIDATION_CHANNEL = "reviews:cache:invalidate";
 
     private final RedisTemplate<String, ReviewDto> reviewRedisTemplate;
-    private final RedisTemplate<String, List<ReviewDto>> reviewListRedisTemplate;
+    private final StringRedisTemplate stringRedisTemplate;
     private final ObjectMapper objectMapper;
 
+    /**
+     * Локальный (L1) кеш перед Redis. Caffeine вытесняет записи с учётом частоты обращений (W-TinyLFU),
+     * поэтому в нём остаются самые горячие отзывы. Ключи совпадают с ключами Redis.
+     */
+    private final Cache<String, Object> localCache;
+
+    /**
+     * Данные для вероятностного раннего обновления (XFetch): известный этому экземпляру момент
+     * истечения ключа в Redis и длительность последнего пересчёта значения.
+     */
+    private final boolean earlyRefreshEnabled;
+    private final double earlyRefreshBeta;
+    private final long defaultRecomputeMillis;
+    private final Cache<String, Long> expiresAtMillis;
+    private final Cache<String, Long> recomputeMillis;
+
+    private final long missingTtlSeconds;
+    private final long searchTtlSeconds;
+
+    private final RedisSerializer<ReviewDto> reviewSerializer;
+    private final long versionTtlSeconds;
+    private final Cache<String, Long> localVersions;
+
+    @SuppressWarnings("unchecked")
     public RedisCacheService(RedisTemplate<String, ReviewDto> reviewRedisTemplate,
-                             RedisTemplate<String, List<ReviewDto>> reviewListRedisTemplate,
-                             ObjectMapper objectMapper) {
+                             StringRedisTemplate stringRedisTemplate,
+                             ObjectMapper objectMapper,
+                             MeterRegistry meterRegistry,
+                             @Value("${cache.l1.maximum-size}") long localMaximumSize,
+                             @Value("${cache.l1.ttl-seconds}") long localTtlSeconds,
+                             @Value("${cache.early-refresh.enabled}") boolean earlyRefreshEnabled,
+                             @Value("${cache.early-refresh.beta}") double earlyRefreshBeta,
+                             @Value("${cache.early-refresh.default-recompute-ms}") long defaultRecomputeMillis,
+                             @Value("${cache.negative.ttl-seconds}") long missingTtlSeconds,
+                             @Value("${cache.change-events.version-ttl-seconds}") long versionTtlSeconds,
+                             @Value("${cache.search.ttl-seconds}") long searchTtlSeconds) {
         this.reviewRedisTemplate = reviewRedisTemplate;
-        this.reviewListRedisTemplate = reviewListRedisTemplate;
+        this.stringRedisTemplate = stringRedisTemplate;
         this.objectMapper = objectMapper;
+        this.localCache = Caffeine.newBuilder()
+                .maximumSize(localMaximumSize)
+                .expireAfterWrite(Duration.ofSeconds(localTtlSeconds))
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, localCache, "reviews-l1");
+
+        this.earlyRefreshEnabled = earlyRefreshEnabled;
+        this.earlyRefreshBeta = earlyRefreshBeta;
+        this.defaultRecomputeMillis = defaultRecomputeMillis;
+        this.expiresAtMillis = Caffeine.newBuilder()
+                .maximumSize(localMaximumSize)
+                .expireAfterWrite(Duration.ofHours(CACHE_TTL_HOURS))
+                .build();
+        this.recomputeMillis = Caffeine.newBuilder()
+                .maximumSize(localMaximumSize)
+                .build();
+        this.missingTtlSeconds = missingTtlSeconds;
+        this.reviewSerializer = (RedisSerializer<ReviewDto>) reviewRedisTemplate.getValueSerializer();
+        this.versionTtlSeconds = versionTtlSeconds;
+        this.searchTtlSeconds = searchTtlSeconds;
+        this.localVersions = Caffeine.newBuilder()
+                .maximumSize(localMaximumSize)
+                .expireAfterWrite(Duration.ofSeconds(versionTtlSeconds))
+                .build();
+    }
+
+    public static String reviewKey(String reviewId) {
+        return REVIEW_CACHE_KEY_PREFIX + reviewId;
+    }
+
+    public static String missingKey(String reviewId) {
+        return MISSING_REVIEW_KEY_PREFIX + reviewId;
+    }
+
+    /**
+     * Нормализованный ключ поиска: одинаковые по смыслу запросы (регистр параметров, пробелы
+     * вокруг клиента, отсутствующие границы) попадают в одну запись кеша.
+     */
+    public static String searchKey(String client, Integer minRating, Integer maxRating, int limit, String cursor) {
+        return SEARCH_CACHE_KEY_PREFIX
+                + "c=" + (client == null ? "" : client.trim())
+                + "|min=" + (minRating == null ? "" : minRating)
+                + "|max=" + (maxRating == null ? "" : maxRating)
+                + "|limit=" + limit
+                + "|after=" + (cursor == null ? "" : cursor);
+    }
+
+    /**
+     * Страница результатов поиска в кеше: ID отзывов по порядку и курсор следующей страницы.
+     */
+    public record CachedIdsPage(List<String> ids, String nextCursor) {
+    }
+
+    private static String versionKey(String reviewId) {
+        return REVIEW_VERSION_KEY_PREFIX + reviewId;
+    }
+
+    private static String etagKey(String reviewId) {
+        return REVIEW_ETAG_KEY_PREFIX + reviewId;
+    }
+
+    /**
+     * ETag отзыва: хеш содержимого, поэтому у всех экземпляров gateway он одинаковый
+     * и не меняется, пока не меняется сам отзыв.
+     *
+     * @param review ReviewDto объект.
+     * @return ETag в кавычках.
+     */
+    public static String reviewEtag(ReviewDto review) {
+        Hasher hasher = Hashing.murmur3_128().newHasher();
+        putField(hasher, review.getId());
+        putField(hasher, review.getClient());
+        hasher.putInt(review.getRating());
+        putField(hasher, review.getComment());
+        return "\"" + hasher.hash() + "\"";
+    }
+
+    private static void putField(Hasher hasher, String value) {
+        // длина перед значением: ("ab", "c") и ("a", "bc") дают разные хеши
+        if (value == null) {
+            hasher.putInt(-1);
+        } else {
+            hasher.putInt(value.length()).putString(value, StandardCharsets.UTF_8);
+        }
+    }
+
+    /**
+     * ETag списка отзывов по версии списка.
+     *
+     * @param listVersion версия из {@link #getListVersion()}.
+     * @return ETag в кавычках.
+     */
+    public static String listEtag(String listVersion) {
+        return "\"l" + listVersion + "\"";
+    }
+
+    /**
+     * ETag отзыва без чтения тела: из тела в L1 или из ключа ETag в Redis, записанного вместе с телом.
+     *
+     * @param reviewId ID отзыва.
+     * @return ETag или null, если отзыва нет в кеше.
+     */
+    public String getReviewEtag(String reviewId) {
+        if (localCache.getIfPresent(reviewKey(reviewId)) instanceof ReviewDto localReview) {
+            return reviewEtag(localReview);
+        }
+        try {
+            return stringRedisTemplate.opsForValue().get(etagKey(reviewId));
+        } catch (Exception e) {
+            log.error("Ошибка при получении ETag отзыва с ID: {} из кеша: {}", reviewId, e.getMessage(), e);
+            return null;
+        }
+    }
+
+    /**
+     * Текущая версия списка отзывов. Читается до индекса и тел: ETag ответа никогда не новее
+     * его содержимого, в худшем случае следующий условный запрос получит полный ответ.
+     *
+     * @return версия или null, если неизвестна (тогда ответ без ETag).
+     */
+    public String getListVersion() {
+        try {
+            return stringRedisTemplate.opsForValue().get(LIST_VERSION_KEY);
+        } catch (Exception e) {
+            log.error("Ошибка при получении версии списка отзывов: {}", e.getMessage(), e);
+            return null;
+        }
+    }
+
+    private void bumpListVersion() {
+        stringRedisTemplate.execute((RedisCallback<Long>) connection ->
+                connection.scriptingCommands().eval(BUMP_LIST_VERSION_SCRIPT, ReturnType.INTEGER, 1,
+                        bytes(LIST_VERSION_KEY), bytes(Long.toString(System.currentTimeMillis()))));
     }
 
     /**
@@ -38,13 +302,19 @@ public class RedisCacheService {
      * @return ReviewDto или null, если не найден.
      */
     public ReviewDto getCachedReview(String reviewId) {
-        String key = REVIEW_CACHE_KEY_PREFIX + reviewId;
+        String key = reviewKey(reviewId);
         log.debug("Попытка получить отзыв из кеша с ключом: {}", key);
 
+        if (localCache.getIfPresent(key) instanceof ReviewDto localReview) {
+            log.debug("L1 HIT - Отзыв с ID: {} найден в локальном кеше", reviewId);
+            return localReview;
+        }
+
         try {
-            ReviewDto cachedReview = reviewRedisTemplate.opsForValue().get(key);
+            ReviewDto cachedReview = readValue(reviewRedisTemplate, key);
             if (cachedReview != null) {
                 log.info("CACHE HIT - Отзыв с ID: {} найден в Redis", reviewId);
+                localCache.put(key, cachedReview);
                 return cachedReview;
             }
             log.info("CACHE MISS - Отзыв с ID: {} не найден в Redis", reviewId);
@@ -55,67 +325,314 @@ public class RedisCacheService {
     }
 
     /**
-     * Кеширование отдельного отзыва.
+     * Кеширование отдельного отзыва, прочитанного из domain-service после промаха.
+     * Если недавно пришло событие об изменении этого отзыва, значение не записывается:
+     * прочитанное состояние могло устареть, а актуальное уже записано событием.
      *
      * @param reviewId ID отзыва.
      * @param review   ReviewDto объект.
      */
     public void cacheReview(String reviewId, ReviewDto review) {
-        String key = REVIEW_CACHE_KEY_PREFIX + reviewId;
+        String key = reviewKey(reviewId);
         log.debug("Попытка кешировать отзыв с ключом: {}", key);
 
         try {
-            reviewRedisTemplate.opsForValue().set(key, review, CACHE_TTL_HOURS, TimeUnit.HOURS);
-            log.info("CACHE UPDATE - Отзыв с ID: {} успешно кеширован в Redis", reviewId);
-
-            // Инвалидируем кеш всех отзывов после обновления отдельного отзыва
-            evictAllReviews();
-            log.debug("Инвалидирован кеш всех отзывов после кеширования отдельного отзыва");
+            Long filled = stringRedisTemplate.execute((RedisCallback<Long>) connection ->
+                    connection.scriptingCommands().eval(FILL_SCRIPT, ReturnType.INTEGER, 3, fillArgs(review)));
+            if (Long.valueOf(1).equals(filled)) {
+                localCache.put(key, review);
+                rememberExpiry(key);
+                log.info("CACHE UPDATE - Отзыв с ID: {} успешно кеширован в Redis", reviewId);
+            } else {
+                log.info("CACHE SKIP - Отзыв с ID: {} недавно изменён, кеш обновлён событием", reviewId);
+            }
         } catch (Exception e) {
             log.error("Ошибка при кешировании отзыва с ID: {}: {}", reviewId, e.getMessage(), e);
         }
     }
 
     /**
-     * Получение всех отзывов из кеша.
+     * Проверка отметки об отсутствии отзыва: недавно domain-service не нашёл отзыв с этим ID.
+     *
+     * @param reviewId ID отзыва.
+     * @return true, если отзыв заведомо отсутствует.
+     */
+    public boolean isKnownMissing(String reviewId) {
+        String key = missingKey(reviewId);
+        if (localCache.getIfPresent(key) == MISSING) {
+            log.debug("L1 HIT - Отзыв с ID: {} отмечен как отсутствующий", reviewId);
+            return true;
+        }
+
+        try {
+            if (Boolean.TRUE.equals(stringRedisTemplate.hasKey(key))) {
+                log.info("CACHE HIT - Отзыв с ID: {} отмечен в Redis как отсутствующий", reviewId);
+                localCache.put(key, MISSING);
+                return true;
+            }
+        } catch (Exception e) {
+            log.error("Ошибка при проверке отметки об отсутствии отзыва с ID: {}: {}", reviewId, e.getMessage(), e);
+        }
+        return false;
+    }
+
+    /**
+     * Отметка об отсутствии отзыва с коротким TTL: повторные запросы того же ID
+     * получают 404 без обращения к domain-service.
+     *
+     * @param reviewId ID отзыва.
+     */
+    public void cacheMissing(String reviewId) {
+        String key = missingKey(reviewId);
+        try {
+            stringRedisTemplate.opsForValue().set(key, "1", missingTtlSeconds, TimeUnit.SECONDS);
+            localCache.put(key, MISSING);
+            log.info("CACHE UPDATE - Отзыв с ID: {} отмечен как отсутствующий на {} с", reviewId, missingTtlSeconds);
+        } catch (Exception e) {
+            log.error("Ошибка при сохранении отметки об отсутствии отзыва с ID: {}: {}", reviewId, e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Получение нескольких отзывов: сначала из локального кеша, остальные - пачками MGET
+     * в одном конвейере Redis.
      *
-     * @return Список ReviewDto или пустой список, если не найдено.
+     * @param reviewIds ID отзывов.
+     * @return найденные в кеше отзывы по ID; отсутствующих ID в результате нет.
      */
     @SuppressWarnings("unchecked")
-    public List<ReviewDto> getCachedAllReviews() {
-        log.debug("Попытка получить все отзывы из кеша");
+    public Map<String, ReviewDto> getCachedReviews(List<String> reviewIds) {
+        Map<String, ReviewDto> found = new HashMap<>(reviewIds.size() * 2);
+        List<String> remoteKeys = new ArrayList<>();
+        for (String reviewId : reviewIds) {
+            String key = reviewKey(reviewId);
+            if (localCache.getIfPresent(key) instanceof ReviewDto localReview) {
+                found.put(reviewId, localReview);
+            } else {
+                remoteKeys.add(key);
+            }
+        }
+        if (remoteKeys.isEmpty()) {
+            return found;
+        }
+
+        try {
+            List<List<String>> chunks = Lists.partition(remoteKeys, PIPELINE_CHUNK_SIZE);
+            List<Object> results = reviewRedisTemplate.executePipelined(new SessionCallback<Object>() {
+                @Override
+                public <K, V> Object execute(RedisOperations<K, V> operations) {
+                    RedisOperations<String, ReviewDto> ops = (RedisOperations<String, ReviewDto>) operations;
+                    chunks.forEach(chunk -> ops.opsForValue().multiGet(chunk));
+                    return null;
+                }
+            });
+            for (Object result : results) {
+                for (Object value : (List<Object>) result) {
+                    if (value instanceof ReviewDto review) {
+                        found.put(review.getId(), review);
+                        localCache.put(reviewKey(review.getId()), review);
+                    }
+                }
+            }
+            log.info("CACHE MGET - {} из {} отзывов найдены в кеше", found.size(), reviewIds.size());
+        } catch (Exception e) {
+            log.error("Ошибка при получении {} отзывов из кеша: {}", remoteKeys.size(), e.getMessage(), e);
+        }
+        return found;
+    }
+
+    /**
+     * Кеширование нескольких отзывов одним конвейером, с той же проверкой недавних событий,
+     * что и в {@link #cacheReview(String, ReviewDto)}.
+     *
+     * @param reviews ReviewDto объекты.
+     */
+    public void cacheReviews(Collection<ReviewDto> reviews) {
+        if (reviews.isEmpty()) {
+            return;
+        }
+        try {
+            List<ReviewDto> ordered = List.copyOf(reviews);
+            List<Object> results = stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                ordered.forEach(review ->
+                        connection.scriptingCommands().eval(FILL_SCRIPT, ReturnType.INTEGER, 3, fillArgs(review)));
+                return null;
+            });
+            int filled = 0;
+            for (int i = 0; i < ordered.size(); i++) {
+                if (Long.valueOf(1).equals(results.get(i))) {
+                    localCache.put(reviewKey(ordered.get(i).getId()), ordered.get(i));
+                    filled++;
+                }
+            }
+            log.info("CACHE UPDATE - {} из {} отзывов кешированы в Redis", filled, reviews.size());
+        } catch (Exception e) {
+            log.error("Ошибка при кешировании {} отзывов: {}", reviews.size(), e.getMessage(), e);
+        }
+    }
 
+    /**
+     * Применение события domain-service об изменении отзыва к общему Redis: тело, индекс списка
+     * и отметка об отсутствии обновляются одним скриптом, только если версия события новее
+     * последней применённой. Вызывается одним экземпляром gateway на событие (общая очередь),
+     * L1 каждого экземпляра обновляет {@link #applyLocalChange}.
+     *
+     * @param event событие об изменении.
+     */
+    public void applyChange(ReviewChanged event) {
+        String id = event.getId();
+        String key = reviewKey(id);
+        ReviewDto review = toReview(event);
         try {
-            List<ReviewDto> cachedReviews = reviewListRedisTemplate.opsForValue().get(ALL_REVIEWS_CACHE_KEY);
-            if (cachedReviews != null && !cachedReviews.isEmpty()) {
-                log.info("CACHE HIT - Все отзывы найдены в Redis. Количество: {}", cachedReviews.size());
-                return cachedReviews;
+            byte[][] keysAndArgs = {
+                    bytes(key),
+                    bytes(versionKey(id)),
+                    bytes(REVIEW_IDS_KEY),
+                    bytes(REVIEW_IDS_COMPLETE_KEY),
+                    bytes(missingKey(id)),
+                    bytes(etagKey(id)),
+                    bytes(LIST_VERSION_KEY),
+                    bytes(Long.toString(event.getVersion())),
+                    review == null ? new byte[0] : reviewSerializer.serialize(review),
+                    bytes(Long.toString(TimeUnit.HOURS.toSeconds(CACHE_TTL_HOURS))),
+                    bytes(id),
+                    bytes(Long.toString(versionTtlSeconds)),
+                    bytes(Long.toString(missingTtlSeconds)),
+                    review == null ? new byte[0] : bytes(reviewEtag(review)),
+                    bytes(Long.toString(System.currentTimeMillis()))
+            };
+            Long applied = stringRedisTemplate.execute((RedisCallback<Long>) connection ->
+                    connection.scriptingCommands().eval(APPLY_CHANGE_SCRIPT, ReturnType.INTEGER, 7, keysAndArgs));
+            if (Long.valueOf(1).equals(applied)) {
+                log.info("CACHE UPDATE - Изменение отзыва с ID: {} (версия {}) применено к кешу{}",
+                        id, event.getVersion(), review == null ? ", отзыв удалён" : "");
+            } else {
+                log.debug("Изменение отзыва с ID: {} (версия {}) устарело или уже применено", id, event.getVersion());
             }
-            log.info("CACHE MISS - Отзывы не найдены в Redis");
         } catch (Exception e) {
-            log.error("Ошибка при получении всех отзывов из кеша: {}", e.getMessage(), e);
+            log.error("Ошибка при применении изменения отзыва с ID: {} к кешу: {}", id, e.getMessage(), e);
         }
-        return Collections.emptyList();
     }
 
     /**
-     * Кеширование всех отзывов.
+     * Применение события об изменении отзыва к L1 этого экземпляра, если версия события новее
+     * последней известной ему.
      *
-     * @param reviews Список ReviewDto объектов.
+     * @param event событие об изменении.
      */
-    public void cacheAllReviews(List<ReviewDto> reviews) {
-        log.debug("Попытка кешировать все отзывы");
+    public void applyLocalChange(ReviewChanged event) {
+        String id = event.getId();
+        String key = reviewKey(id);
+        Long known = localVersions.getIfPresent(id);
+        if (known != null && event.getVersion() <= known) {
+            return;
+        }
+        localVersions.put(id, event.getVersion());
+        ReviewDto review = toReview(event);
+        if (review == null) {
+            invalidateLocal(key);
+            localCache.put(missingKey(id), MISSING);
+        } else {
+            localCache.put(key, review);
+            localCache.invalidate(missingKey(id));
+            rememberExpiry(key);
+        }
+    }
+
+    // null для удалённого отзыва
+    private static ReviewDto toReview(ReviewChanged event) {
+        return event.getDeleted() ? null : new ReviewDto(event.getId(), event.getReview().getClient(),
+                event.getReview().getRating(), event.getReview().getComment());
+    }
+
+    private byte[][] fillArgs(ReviewDto review) {
+        return new byte[][]{
+                bytes(reviewKey(review.getId())),
+                bytes(versionKey(review.getId())),
+                bytes(etagKey(review.getId())),
+                reviewSerializer.serialize(review),
+                bytes(Long.toString(TimeUnit.HOURS.toSeconds(CACHE_TTL_HOURS))),
+                bytes(reviewEtag(review))
+        };
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Получение страницы результатов поиска из кеша.
+     *
+     * @param key ключ из {@link #searchKey}.
+     * @return страница или null, если не найдена.
+     */
+    public CachedIdsPage getCachedSearch(String key) {
+        if (localCache.getIfPresent(key) instanceof CachedIdsPage localPage) {
+            log.debug("L1 HIT - Результат поиска {} найден в локальном кеше", key);
+            return localPage;
+        }
 
         try {
-            if (reviews == null || reviews.isEmpty()) {
-                log.warn("Невозможно кешировать пустой или null список отзывов");
-                return;
+            String cached = stringRedisTemplate.opsForValue().get(key);
+            if (cached != null) {
+                CachedIdsPage page = objectMapper.readValue(cached, CachedIdsPage.class);
+                log.info("CACHE HIT - Результат поиска {} найден в Redis", key);
+                localCache.put(key, page);
+                return page;
             }
+            log.info("CACHE MISS - Результат поиска {} не найден в Redis", key);
+        } catch (Exception e) {
+            log.error("Ошибка при получении результата поиска {} из кеша: {}", key, e.getMessage(), e);
+        }
+        return null;
+    }
 
-            reviewListRedisTemplate.opsForValue().set(ALL_REVIEWS_CACHE_KEY, reviews, CACHE_TTL_HOURS, TimeUnit.HOURS);
-            log.info("CACHE UPDATE - {} отзывов успешно кешированы в Redis", reviews.size());
+    /**
+     * Кеширование страницы результатов поиска с коротким TTL: состав выборки меняется
+     * при изменении оценок, а тела отзывов обновляются событиями отдельно.
+     *
+     * @param key  ключ из {@link #searchKey}.
+     * @param page страница результатов.
+     */
+    public void cacheSearch(String key, ReviewPageDto page) {
+        try {
+            CachedIdsPage ids = new CachedIdsPage(
+                    page.getItems().stream().map(ReviewDto::getId).toList(), page.getNextCursor());
+            stringRedisTemplate.opsForValue().set(key, objectMapper.writeValueAsString(ids), searchTtlSeconds, TimeUnit.SECONDS);
+            localCache.put(key, ids);
+            cacheReviews(page.getItems());
+            log.info("CACHE UPDATE - Результат поиска {} ({} отзывов) кеширован", key, page.getItems().size());
         } catch (Exception e) {
-            log.error("Ошибка при кешировании всех отзывов: {}", e.getMessage(), e);
+            log.error("Ошибка при кешировании результата поиска {}: {}", key, e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Удаление ID из индекса списка (отзыва нет в domain-service).
+     *
+     * @param reviewId ID отзыва.
+     */
+    public void removeFromIndex(String reviewId) {
+        try {
+            stringRedisTemplate.opsForZSet().remove(REVIEW_IDS_KEY, reviewId);
+            bumpListVersion();
+            log.info("CACHE EVICT - Отзыв с ID: {} удалён из индекса списка", reviewId);
+        } catch (Exception e) {
+            log.error("Ошибка при удалении отзыва с ID: {} из индекса списка: {}", reviewId, e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Сброс индекса списка (после потоковой загрузки): следующий запрос списка заполнит его заново.
+     */
+    public void invalidateReviewIndex() {
+        try {
+            stringRedisTemplate.delete(List.of(REVIEW_IDS_COMPLETE_KEY, REVIEW_IDS_KEY));
+            expiresAtMillis.invalidate(REVIEW_IDS_KEY);
+            bumpListVersion();
+            log.info("CACHE EVICT - Индекс списка отзывов сброшен после загрузки");
+        } catch (Exception e) {
+            log.error("Ошибка при сбросе индекса списка отзывов: {}", e.getMessage(), e);
         }
     }
 
@@ -125,40 +642,224 @@ public class RedisCacheService {
      * @param reviewId ID отзыва.
      */
     public void evictReview(String reviewId) {
-        String key = REVIEW_CACHE_KEY_PREFIX + reviewId;
+        String key = reviewKey(reviewId);
         log.debug("Попытка удалить отзыв из кеша с ключом: {}", key);
 
+        invalidateLocal(key);
         try {
-            Boolean deleted = reviewRedisTemplate.delete(key);
-            if (Boolean.TRUE.equals(deleted)) {
+            Long deleted = stringRedisTemplate.delete(List.of(key, etagKey(reviewId)));
+            if (deleted != null && deleted > 0) {
                 log.info("CACHE EVICT - Отзыв с ID: {} успешно удалён из Redis", reviewId);
             } else {
                 log.info("CACHE MISS - Отзыв с ID: {} не найден в Redis при попытке удаления", reviewId);
             }
-
-            // Инвалидируем кеш всех отзывов после удаления отдельного отзыва
-            evictAllReviews();
-            log.debug("Инвалидирован кеш всех отзывов после удаления отдельного отзыва");
+            publishInvalidation(key);
         } catch (Exception e) {
             log.error("Ошибка при удалении отзыва с ID: {} из кеша: {}", reviewId, e.getMessage(), e);
         }
     }
 
     /**
-     * Удаление всех отзывов из кеша.
+     * ID отзывов из индекса списка в порядке возрастания (тот же порядок, что и у курсоров domain-service).
+     * Признак полноты индекса запрашивается в том же конвейере, что и диапазон.
+     *
+     * @param afterId курсор: ID, после которого начинается диапазон (null - с начала).
+     * @param limit   максимум ID; отрицательное значение - без ограничения.
+     * @return ID отзывов или null, если индекс не заполнен.
      */
-    public void evictAllReviews() {
-        log.debug("Попытка удалить все отзывы из кеша");
+    public List<String> getCachedReviewIds(String afterId, int limit) {
+        Range<String> range = afterId == null
+                ? Range.unbounded()
+                : Range.rightUnbounded(Range.Bound.exclusive(afterId));
+        Limit count = limit < 0 ? Limit.unlimited() : Limit.limit().count(limit);
+        try {
+            List<Object> results = stringRedisTemplate.executePipelined(new SessionCallback<Object>() {
+                @Override
+                @SuppressWarnings("unchecked")
+                public <K, V> Object execute(RedisOperations<K, V> operations) {
+                    RedisOperations<String, String> ops = (RedisOperations<String, String>) operations;
+                    ops.getExpire(REVIEW_IDS_COMPLETE_KEY, TimeUnit.MILLISECONDS);
+                    ops.opsForZSet().rangeByLex(REVIEW_IDS_KEY, range, count);
+                    return null;
+                }
+            });
+            if (!(results.get(0) instanceof Long ttl) || ttl <= 0) {
+                log.info("CACHE MISS - Индекс списка отзывов не заполнен");
+                return null;
+            }
+            expiresAtMillis.put(REVIEW_IDS_KEY, System.currentTimeMillis() + ttl);
+            List<String> ids = new ArrayList<>();
+            for (Object id : (Collection<?>) results.get(1)) {
+                ids.add((String) id);
+            }
+            log.info("CACHE HIT - {} ID отзывов получены из индекса списка", ids.size());
+            return ids;
+        } catch (Exception e) {
+            log.error("Ошибка при чтении индекса списка отзывов: {}", e.getMessage(), e);
+            return null;
+        }
+    }
 
+    /**
+     * Начало построения индекса списка. ID добавляются во временный ключ по мере обхода страниц
+     * domain-service и заменяют индекс одной командой в {@link #completeReviewIndex(String)};
+     * до этого читатели видят прежний индекс или его отсутствие. Изменения отзывов во время
+     * построения попадают только в прежний индекс, как и при заполнении одним снимком.
+     *
+     * @return ключ строящегося индекса.
+     */
+    public String beginReviewIndex() {
+        return REVIEW_IDS_KEY + ":build:" + UUID.randomUUID();
+    }
+
+    /**
+     * Очередная страница строящегося индекса (ID в порядке возрастания). У временного ключа тот же TTL,
+     * что и у индекса: брошенное построение не оставляет ключ навсегда.
+     *
+     * @param buildKey ключ из {@link #beginReviewIndex()}.
+     * @param ids      ID отзывов страницы.
+     * @return false, если записать не удалось и построение стоит прекратить.
+     */
+    public boolean appendToReviewIndex(String buildKey, List<String> ids) {
+        if (ids.isEmpty()) {
+            return true;
+        }
+        Set<ZSetOperations.TypedTuple<String>> tuples = new HashSet<>(ids.size() * 2);
+        ids.forEach(id -> tuples.add(ZSetOperations.TypedTuple.of(id, 0.0)));
         try {
-            Boolean deleted = reviewListRedisTemplate.delete(ALL_REVIEWS_CACHE_KEY);
-            if (Boolean.TRUE.equals(deleted)) {
-                log.info("CACHE EVICT - Все отзывы успешно удалены из Redis");
-            } else {
-                log.info("CACHE MISS - Кеш всех отзывов не найден при попытке удаления");
+            stringRedisTemplate.executePipelined(new SessionCallback<Object>() {
+                @Override
+                @SuppressWarnings("unchecked")
+                public <K, V> Object execute(RedisOperations<K, V> operations) {
+                    RedisOperations<String, String> ops = (RedisOperations<String, String>) operations;
+                    ops.opsForZSet().add(buildKey, tuples);
+                    ops.expire(buildKey, CACHE_TTL_HOURS, TimeUnit.HOURS);
+                    return null;
+                }
+            });
+            return true;
+        } catch (Exception e) {
+            log.error("Ошибка при заполнении индекса списка отзывов: {}", e.getMessage(), e);
+            return false;
+        }
+    }
+
+    /**
+     * Замена индекса списка построенным и отметка о полноте с тем же TTL.
+     *
+     * @param buildKey ключ из {@link #beginReviewIndex()}.
+     * @param size     число ID в индексе (для журнала).
+     */
+    public void completeReviewIndex(String buildKey, long size) {
+        try {
+            stringRedisTemplate.execute((RedisCallback<Long>) connection ->
+                    connection.scriptingCommands().eval(COMPLETE_INDEX_SCRIPT, ReturnType.INTEGER, 3,
+                            bytes(buildKey), bytes(REVIEW_IDS_KEY), bytes(REVIEW_IDS_COMPLETE_KEY),
+                            bytes(Long.toString(TimeUnit.HOURS.toSeconds(CACHE_TTL_HOURS)))));
+            bumpListVersion();
+            rememberExpiry(REVIEW_IDS_KEY);
+            log.info("CACHE UPDATE - Индекс списка заполнен, {} отзывов", size);
+        } catch (Exception e) {
+            log.error("Ошибка при заполнении индекса списка отзывов: {}", e.getMessage(), e);
+            abandonReviewIndex(buildKey);
+        }
+    }
+
+    /**
+     * Отказ от построения индекса (ошибка domain-service, клиент закрыл соединение).
+     *
+     * @param buildKey ключ из {@link #beginReviewIndex()}.
+     */
+    public void abandonReviewIndex(String buildKey) {
+        try {
+            stringRedisTemplate.delete(buildKey);
+        } catch (Exception e) {
+            log.error("Ошибка при удалении строящегося индекса {}: {}", buildKey, e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Удаление ключа из локального кеша по сообщению от другого экземпляра gateway.
+     *
+     * @param key ключ кеша.
+     */
+    public void invalidateLocal(String key) {
+        localCache.invalidate(key);
+        expiresAtMillis.invalidate(key);
+        log.debug("L1 EVICT - Ключ {} удалён из локального кеша", key);
+    }
+
+    /**
+     * Вероятностное раннее обновление (XFetch): ключ пора пересчитать, если
+     * now - recompute * beta * ln(rand) >= expiry. Чем ближе истечение и чем дольше пересчёт,
+     * тем выше вероятность; обновляет обычно один запрос, остальные продолжают читать кеш.
+     *
+     * @param key ключ кеша.
+     * @return true, если значение стоит пересчитать в фоне.
+     */
+    public boolean shouldRefreshEarly(String key) {
+        if (!earlyRefreshEnabled) {
+            return false;
+        }
+        Long expiresAt = expiresAtMillis.getIfPresent(key);
+        if (expiresAt == null) {
+            return false;
+        }
+        Long recompute = recomputeMillis.getIfPresent(key);
+        double delta = recompute != null ? recompute : defaultRecomputeMillis;
+        double gap = -delta * earlyRefreshBeta * Math.log(ThreadLocalRandom.current().nextDouble());
+        return System.currentTimeMillis() + gap >= expiresAt;
+    }
+
+    /**
+     * Длительность пересчёта значения ключа, используется в {@link #shouldRefreshEarly(String)}.
+     *
+     * @param key    ключ кеша.
+     * @param millis длительность загрузки из domain-service.
+     */
+    public void recordRecomputeTime(String key, long millis) {
+        recomputeMillis.put(key, millis);
+    }
+
+    /**
+     * Чтение значения из Redis. При включённом раннем обновлении вместе со значением
+     * в том же конвейере запрашивается PTTL ключа - без дополнительного сетевого обхода.
+     */
+    @SuppressWarnings("unchecked")
+    private <T> T readValue(RedisTemplate<String, T> template, String key) {
+        if (!earlyRefreshEnabled) {
+            return template.opsForValue().get(key);
+        }
+        List<Object> results = template.executePipelined(new SessionCallback<Object>() {
+            @Override
+            public <K, V> Object execute(RedisOperations<K, V> operations) {
+                RedisOperations<String, T> ops = (RedisOperations<String, T>) operations;
+                ops.opsForValue().get(key);
+                ops.getExpire(key, TimeUnit.MILLISECONDS);
+                return null;
             }
+        });
+        T value = (T) results.get(0);
+        if (value != null && results.get(1) instanceof Long ttl && ttl > 0) {
+            expiresAtMillis.put(key, System.currentTimeMillis() + ttl);
+        }
+        return value;
+    }
+
+    private void rememberExpiry(String key) {
+        if (earlyRefreshEnabled) {
+            expiresAtMillis.put(key, System.currentTimeMillis() + TimeUnit.HOURS.toMillis(CACHE_TTL_HOURS));
+        }
+    }
+
+    /**
+     * Рассылка инвалидации через Redis pub/sub, чтобы все экземпляры gateway сбросили L1.
+     */
+    private void publishInvalidation(String key) {
+        try {
+            stringRedisTemplate.convertAndSend(INVALIDATION_CHANNEL, key);
         } catch (Exception e) {
-            log.error("Ошибка при удалении всех отзывов из кеша: {}", e.getMessage(), e);
+            log.error("Ошибка при рассылке инвалидации ключа {}: {}", key, e.getMessage(), e);
         }
     }
 }
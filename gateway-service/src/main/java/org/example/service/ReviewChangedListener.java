@@ -0,0 +1,73 @@
+package org.example.service;
+
+import com.google.protobuf.InvalidProtocolBufferException;
+import org.example.domainservice.ReviewChanged;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.amqp.AmqpRejectAndDontRequeueException;
+import org.springframework.amqp.core.ExchangeTypes;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.rabbit.annotation.Exchange;
+import org.springframework.amqp.rabbit.annotation.Queue;
+import org.springframework.amqp.rabbit.annotation.QueueBinding;
+import org.springframework.amqp.rabbit.annotation.RabbitListener;
+import org.springframework.stereotype.Component;
+
+/**
+ * Принимает события domain-service об изменениях отзывов из двух очередей, привязанных к одному
+ * fanout-обменнику. Общая именованная очередь читается всеми экземплярами gateway как конкурирующими
+ * получателями, поэтому общий Redis обновляет один экземпляр на событие. Анонимная очередь своя
+ * у каждого экземпляра: по ней обновляются его L1 и фильтр ID.
+ * Потоковая загрузка присылает одно событие без отзывов: индекс списка в Redis сбрасывается,
+ * фильтр ID перестраивается, отдельные тела кешируются обычным путём по промаху.
+ */
+@Component
+public class ReviewChangedListener {
+    private static final Logger log = LoggerFactory.getLogger(ReviewChangedListener.class);
+
+    private final RedisCacheService cacheService;
+    private final ReviewIdFilter reviewIdFilter;
+
+    public ReviewChangedListener(RedisCacheService cacheService, ReviewIdFilter reviewIdFilter) {
+        this.cacheService = cacheService;
+        this.reviewIdFilter = reviewIdFilter;
+    }
+
+    @RabbitListener(bindings = @QueueBinding(
+            value = @Queue(value = "${rabbitmq.events.cache-queue}", durable = "true"),
+            exchange = @Exchange(value = "${rabbitmq.events.exchange}", type = ExchangeTypes.FANOUT)))
+    public void onReviewChanged(Message message) {
+        ReviewChanged event = parse(message);
+        if (event.getBulkLoaded()) {
+            cacheService.invalidateReviewIndex();
+        } else {
+            cacheService.applyChange(event);
+        }
+    }
+
+    @RabbitListener(bindings = @QueueBinding(
+            value = @Queue,
+            exchange = @Exchange(value = "${rabbitmq.events.exchange}", type = ExchangeTypes.FANOUT)))
+    public void onReviewChangedLocally(Message message) {
+        ReviewChanged event = parse(message);
+        if (event.getBulkLoaded()) {
+            reviewIdFilter.invalidate();
+            return;
+        }
+        cacheService.applyLocalChange(event);
+        if (event.getDeleted()) {
+            reviewIdFilter.removed(event.getId());
+        } else {
+            reviewIdFilter.add(event.getId());
+        }
+    }
+
+    private static ReviewChanged parse(Message message) {
+        try {
+            return ReviewChanged.parseFrom(message.getBody());
+        } catch (InvalidProtocolBufferException e) {
+            log.error("Некорректное событие об изменении отзыва: {}", e.getMessage());
+            throw new AmqpRejectAndDontRequeueException("Malformed ReviewChanged", e);
+        }
+    }
+}
@@ -0,0 +1,177 @@
+package org.example.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.google.common.hash.BloomFilter;
+import com.google.common.hash.Funnels;
+import org.example.grpc.ReviewGrpcClient;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Фильтр Блума известных ID отзывов. Если фильтр говорит «нет», отзыва заведомо нет,
+ * и gateway отвечает 404 без Redis и domain-service. Ложные «да» (доля fpp) проходят
+ * обычный путь через кеш.
+ * <p>
+ * Фильтр целиком перестраивается по потоку StreamReviews; удалённые отзывы уходят из него
+ * только при перестройке. Пока первая перестройка не завершилась, фильтр пропускает все ID.
+ * <p>
+ * Перестройка читает всю коллекцию, поэтому выполняется при старте и затем только когда фильтр
+ * заметно испортился: оценка доли ложных срабатываний выросла выше fpp * max-fpp-factor
+ * (добавлено больше ID, чем рассчитан фильтр) или удалённых с прошлой перестройки стало больше
+ * max-deleted-ratio от числа ID. Периодическая проверка этих условий ничего не читает.
+ */
+@Component
+public class ReviewIdFilter {
+    private static final Logger log = LoggerFactory.getLogger(ReviewIdFilter.class);
+
+    private final ReviewGrpcClient reviewGrpcClient;
+    private final boolean enabled;
+    private final long expectedInsertions;
+    private final double fpp;
+    private final double maxFppFactor;
+    private final double maxDeletedRatio;
+
+    private volatile BloomFilter<CharSequence> filter;
+    private volatile BloomFilter<CharSequence> building;
+    private volatile long builtCount;
+    private final LongAdder deletedSinceBuild = new LongAdder();
+    private final AtomicBoolean rebuilding = new AtomicBoolean();
+    // растёт при каждом отказе от фильтра: перестройка, начатая раньше, свой результат не ставит
+    private final AtomicLong generation = new AtomicLong();
+
+    /**
+     * ID, созданные недавно. Команда создания может дойти до MongoDB уже после того, как
+     * перестройка прошла её позицию, поэтому такие ID переносятся в каждый новый фильтр.
+     * Пока ID здесь, отсутствие отзыва не кешируется: команда ещё может быть в очереди.
+     */
+    private final Cache<String, Boolean> recentlyCreated;
+
+    public ReviewIdFilter(ReviewGrpcClient reviewGrpcClient,
+                          @Value("${cache.bloom.enabled}") boolean enabled,
+                          @Value("${cache.bloom.expected-insertions}") long expectedInsertions,
+                          @Value("${cache.bloom.fpp}") double fpp,
+                          @Value("${cache.bloom.max-fpp-factor}") double maxFppFactor,
+                          @Value("${cache.bloom.max-deleted-ratio}") double maxDeletedRatio,
+                          @Value("${cache.bloom.recently-created-ttl-ms}") long recentlyCreatedTtlMs) {
+        this.reviewGrpcClient = reviewGrpcClient;
+        this.enabled = enabled;
+        this.expectedInsertions = expectedInsertions;
+        this.fpp = fpp;
+        this.maxFppFactor = maxFppFactor;
+        this.maxDeletedRatio = maxDeletedRatio;
+        // должно покрывать задержку команды в очереди и длительность перестройки
+        this.recentlyCreated = Caffeine.newBuilder()
+                .expireAfterWrite(Duration.ofMillis(recentlyCreatedTtlMs))
+                .build();
+    }
+
+    /**
+     * @return false, если отзыва с таким ID заведомо нет.
+     */
+    public boolean mightExist(String id) {
+        BloomFilter<CharSequence> current = filter;
+        return current == null || current.mightContain(id) || recentlyCreated.getIfPresent(id) != null;
+    }
+
+    public boolean isRecentlyCreated(String id) {
+        return recentlyCreated.getIfPresent(id) != null;
+    }
+
+    /**
+     * Регистрация нового ID (создание на этом или другом экземпляре gateway).
+     */
+    public void add(String id) {
+        recentlyCreated.put(id, Boolean.TRUE);
+        BloomFilter<CharSequence> current = filter;
+        if (current != null) {
+            current.put(id);
+        }
+        BloomFilter<CharSequence> next = building;
+        if (next != null) {
+            next.put(id);
+        }
+    }
+
+    /**
+     * Отказ от текущего фильтра после потоковой загрузки: пока он не перестроен при следующей
+     * проверке, пропускаются все ID.
+     */
+    public void invalidate() {
+        generation.incrementAndGet();
+        filter = null;
+    }
+
+    /**
+     * Учёт удалённого отзыва: его ID остаётся в фильтре до перестройки.
+     */
+    public void removed(String id) {
+        deletedSinceBuild.increment();
+    }
+
+    /**
+     * Первый запуск строит фильтр (и повторяет попытку, если domain-service был недоступен),
+     * дальше перестройка только по деградации фильтра.
+     */
+    @Scheduled(fixedDelayString = "${cache.bloom.check-interval-ms}")
+    public void rebuildIfDegraded() {
+        if (!enabled) {
+            return;
+        }
+        BloomFilter<CharSequence> current = filter;
+        if (current == null) {
+            rebuild();
+            return;
+        }
+        double currentFpp = current.expectedFpp();
+        long deleted = deletedSinceBuild.sum();
+        if (currentFpp > fpp * maxFppFactor || deleted > Math.max(1, builtCount) * maxDeletedRatio) {
+            log.info("Фильтр Блума ID отзывов будет перестроен: доля ложных срабатываний {}, удалено с перестройки {}",
+                    currentFpp, deleted);
+            rebuild();
+        }
+    }
+
+    private void rebuild() {
+        if (!rebuilding.compareAndSet(false, true)) {
+            return;
+        }
+        BloomFilter<CharSequence> next = BloomFilter.create(
+                Funnels.stringFunnel(StandardCharsets.UTF_8), expectedInsertions, fpp);
+        building = next;
+        long startedGeneration = generation.get();
+        long deletedBefore = deletedSinceBuild.sum();
+        try {
+            long[] count = {0};
+            reviewGrpcClient.streamReviews(review -> {
+                next.put(review.getId());
+                count[0]++;
+            });
+            recentlyCreated.asMap().keySet().forEach(next::put);
+            if (generation.get() != startedGeneration) {
+                log.info("Фильтр Блума ID отзывов устарел во время перестройки, будет перестроен повторно");
+                return;
+            }
+            filter = next;
+            builtCount = count[0];
+            // удаления во время перестройки могли попасть в поток - учитываются в следующий раз
+            deletedSinceBuild.add(-deletedBefore);
+            log.info("Фильтр Блума ID отзывов перестроен: {} ID, ожидаемая доля ложных срабатываний {}",
+                    count[0], next.expectedFpp());
+        } catch (Exception e) {
+            log.error("Ошибка при перестройке фильтра Блума ID отзывов: {}", e.getMessage(), e);
+        } finally {
+            building = null;
+            rebuilding.set(false);
+        }
+    }
+}
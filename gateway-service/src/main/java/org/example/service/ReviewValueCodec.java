@@ -0,0 +1,120 @@
+package org.example.service;
+
+import com.google.protobuf.InvalidProtocolBufferException;
+import net.jpountz.lz4.LZ4Compressor;
+import net.jpountz.lz4.LZ4Factory;
+import net.jpountz.lz4.LZ4FastDecompressor;
+import org.example.domainservice.ReviewResponse;
+import org.example.dto.ReviewDto;
+import org.springframework.data.redis.serializer.GenericJackson2JsonRedisSerializer;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.data.redis.serializer.SerializationException;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Компактный формат значений Redis: отзыв хранится как {@link ReviewResponse} в protobuf,
+ * большие значения дополнительно сжимаются LZ4. Первый байт значения - формат:
+ * <ul>
+ *     <li>0x01 - protobuf;</li>
+ *     <li>0x02 - длина protobuf (4 байта) и protobuf, сжатый LZ4.</li>
+ * </ul>
+ * Значения, записанные прежним JSON-сериализатором (начинаются с '{'), читаются через него,
+ * поэтому переход не требует сброса кеша: старые записи заменяются новыми по мере истечения TTL.
+ * С writeProtobuf=false кодек пишет JSON, но по-прежнему читает оба формата (откат миграции).
+ */
+public class ReviewValueCodec implements RedisSerializer<ReviewDto> {
+
+    private static final byte FORMAT_PROTOBUF = 0x01;
+    private static final byte FORMAT_PROTOBUF_LZ4 = 0x02;
+    private static final byte LEGACY_JSON_OBJECT = '{';
+
+    private final GenericJackson2JsonRedisSerializer legacyJson;
+    private final int compressionThreshold;
+    private final boolean writeProtobuf;
+    private final LZ4Compressor compressor;
+    private final LZ4FastDecompressor decompressor;
+
+    /**
+     * @param legacyJson           сериализатор, которым записаны старые значения (без сведений о типе,
+     *                             поэтому читаются как {@link ReviewDto} явно).
+     * @param compressionThreshold размер protobuf в байтах, начиная с которого значение сжимается.
+     * @param writeProtobuf        false - записывать значения в прежнем JSON.
+     */
+    public ReviewValueCodec(GenericJackson2JsonRedisSerializer legacyJson, int compressionThreshold, boolean writeProtobuf) {
+        this.legacyJson = legacyJson;
+        this.compressionThreshold = compressionThreshold;
+        this.writeProtobuf = writeProtobuf;
+        LZ4Factory factory = LZ4Factory.fastestInstance();
+        this.compressor = factory.fastCompressor();
+        this.decompressor = factory.fastDecompressor();
+    }
+
+    @Override
+    public byte[] serialize(ReviewDto review) throws SerializationException {
+        if (review == null) {
+            return null;
+        }
+        if (!writeProtobuf) {
+            return legacyJson.serialize(review);
+        }
+        byte[] proto = toProto(review).toByteArray();
+        if (proto.length < compressionThreshold) {
+            byte[] value = new byte[proto.length + 1];
+            value[0] = FORMAT_PROTOBUF;
+            System.arraycopy(proto, 0, value, 1, proto.length);
+            return value;
+        }
+
+        byte[] compressed = new byte[compressor.maxCompressedLength(proto.length)];
+        int compressedLength = compressor.compress(proto, 0, proto.length, compressed, 0, compressed.length);
+        return ByteBuffer.allocate(1 + Integer.BYTES + compressedLength)
+                .put(FORMAT_PROTOBUF_LZ4)
+                .putInt(proto.length)
+                .put(compressed, 0, compressedLength)
+                .array();
+    }
+
+    @Override
+    public ReviewDto deserialize(byte[] bytes) throws SerializationException {
+        if (bytes == null || bytes.length == 0) {
+            return null;
+        }
+        try {
+            return switch (bytes[0]) {
+                case FORMAT_PROTOBUF -> fromProto(ReviewResponse.parseFrom(ByteBuffer.wrap(bytes, 1, bytes.length - 1)));
+                case FORMAT_PROTOBUF_LZ4 -> {
+                    int length = ByteBuffer.wrap(bytes, 1, Integer.BYTES).getInt();
+                    byte[] proto = decompressor.decompress(bytes, 1 + Integer.BYTES, length);
+                    yield fromProto(ReviewResponse.parseFrom(proto));
+                }
+                case LEGACY_JSON_OBJECT -> legacyJson.deserialize(bytes, ReviewDto.class);
+                default -> throw new SerializationException("Unknown review value format: " + bytes[0]);
+            };
+        } catch (InvalidProtocolBufferException e) {
+            throw new SerializationException("Malformed review value", e);
+        }
+    }
+
+    @Override
+    public Class<?> getTargetType() {
+        return ReviewDto.class;
+    }
+
+    private static ReviewResponse toProto(ReviewDto review) {
+        ReviewResponse.Builder builder = ReviewResponse.newBuilder()
+                .setId(review.getId())
+                .setRating(review.getRating());
+        if (review.getClient() != null) {
+            builder.setClient(review.getClient());
+        }
+        if (review.getComment() != null) {
+            builder.setComment(review.getComment());
+        }
+        return builder.build();
+    }
+
+    private static ReviewDto fromProto(ReviewResponse review) {
+        return new ReviewDto(review.getId(), review.getClient(), review.getRating(), review.getComment());
+    }
+}
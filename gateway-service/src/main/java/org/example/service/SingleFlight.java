@@ -0,0 +1,49 @@
+package org.example.service;
+
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Supplier;
+
+/**
+ * Объединение одновременных промахов кеша по одному ключу: пока загрузка ключа выполняется,
+ * остальные запросы ждут её результат вместо собственного обращения к domain-service.
+ */
+@Component
+public class SingleFlight {
+
+    private final ConcurrentMap<String, CompletableFuture<?>> inFlight = new ConcurrentHashMap<>();
+
+    /**
+     * @param key    ключ кеша.
+     * @param loader загрузка значения; вызывается только если для ключа нет загрузки в процессе.
+     * @return результат общей загрузки. Каждый вызывающий получает свою копию future,
+     * поэтому отмена одного запроса не отменяет загрузку для остальных.
+     */
+    @SuppressWarnings("unchecked")
+    public <T> CompletableFuture<T> execute(String key, Supplier<CompletableFuture<T>> loader) {
+        CompletableFuture<T> flight = new CompletableFuture<>();
+        CompletableFuture<T> existing = (CompletableFuture<T>) inFlight.putIfAbsent(key, flight);
+        if (existing != null) {
+            return existing.copy();
+        }
+
+        CompletableFuture<T> loading;
+        try {
+            loading = loader.get();
+        } catch (RuntimeException e) {
+            loading = CompletableFuture.failedFuture(e);
+        }
+        loading.whenComplete((value, ex) -> {
+            inFlight.remove(key, flight);
+            if (ex != null) {
+                flight.completeExceptionally(ex);
+            } else {
+                flight.complete(value);
+            }
+        });
+        return flight.copy();
+    }
+}
@@ -0,0 +1,100 @@
+package org.example.config;
+
+import io.grpc.Server;
+import io.grpc.Status;
+import io.grpc.health.v1.HealthCheckResponse.ServingStatus;
+import io.grpc.inprocess.InProcessServerBuilder;
+import io.grpc.protobuf.services.HealthStatusManager;
+import io.grpc.stub.StreamObserver;
+import org.example.domainservice.CreateReviewRequest;
+import org.example.domainservice.CreateReviewResponse;
+import org.example.domainservice.GetAllReviewsRequest;
+import org.example.domainservice.GetAllReviewsResponse;
+import org.example.domainservice.GetReviewRequest;
+import org.example.domainservice.ReviewResponse;
+import org.example.domainservice.ReviewServiceGrpc;
+
+import java.io.IOException;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * In-process экземпляр domain-service: GetReview отвечает отзывом с client = имя экземпляра,
+ * статус в grpc.health.v1.Health задаётся тестом. Сбои GetReview, GetAllReviews и CreateReview
+ * тоже задаются тестом: очередные вызовы завершаются статусами из failures, при failAll - все,
+ * при hang вызовы остаются без ответа.
+ */
+final class DomainInstance extends ReviewServiceGrpc.ReviewServiceImplBase {
+
+    final String name;
+    final AtomicInteger calls = new AtomicInteger();
+    final Queue<Status> failures = new ConcurrentLinkedQueue<>();
+    volatile Status failAll;
+    volatile boolean hang;
+    private final HealthStatusManager health = new HealthStatusManager();
+    private final Server server;
+
+    DomainInstance(String name) throws IOException {
+        this.name = name;
+        this.server = InProcessServerBuilder.forName(name)
+                .directExecutor()
+                .addService(this)
+                .addService(health.getHealthService())
+                .build()
+                .start();
+        health.setStatus("", ServingStatus.SERVING);
+    }
+
+    @Override
+    public void getReview(GetReviewRequest request, StreamObserver<ReviewResponse> responseObserver) {
+        if (!injectFault(responseObserver)) {
+            responseObserver.onNext(ReviewResponse.newBuilder().setId(request.getId()).setClient(name).build());
+            responseObserver.onCompleted();
+        }
+    }
+
+    @Override
+    public void getAllReviews(GetAllReviewsRequest request, StreamObserver<GetAllReviewsResponse> responseObserver) {
+        if (!injectFault(responseObserver)) {
+            responseObserver.onNext(GetAllReviewsResponse.getDefaultInstance());
+            responseObserver.onCompleted();
+        }
+    }
+
+    @Override
+    public void createReview(CreateReviewRequest request, StreamObserver<CreateReviewResponse> responseObserver) {
+        if (!injectFault(responseObserver)) {
+            responseObserver.onNext(CreateReviewResponse.newBuilder().setId(request.getId()).build());
+            responseObserver.onCompleted();
+        }
+    }
+
+    /**
+     * @return true, если вызов завершён сбоем или оставлен без ответа.
+     */
+    private boolean injectFault(StreamObserver<?> responseObserver) {
+        calls.incrementAndGet();
+        if (hang) {
+            return true;
+        }
+        Status status = failures.poll();
+        if (status == null) {
+            status = failAll;
+        }
+        if (status == null) {
+            return false;
+        }
+        responseObserver.onError(status.asRuntimeException());
+        return true;
+    }
+
+    void setServing(boolean serving) {
+        health.setStatus("", serving ? ServingStatus.SERVING : ServingStatus.NOT_SERVING);
+    }
+
+    void stop() throws InterruptedException {
+        server.shutdownNow().awaitTermination(5, TimeUnit.SECONDS);
+    }
+}
@@ -0,0 +1,144 @@
+package org.example.config;
+
+import io.grpc.ManagedChannel;
+import io.grpc.Status;
+import io.grpc.StatusRuntimeException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import junit.framework.TestCase;
+import org.example.domainservice.CreateReviewRequest;
+import org.example.domainservice.GetAllReviewsRequest;
+import org.example.domainservice.GetReviewRequest;
+import org.example.domainservice.ReviewServiceGrpc;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Политика вызовов из service config {@link GrpcClientConfig} против in-process экземпляра
+ * domain-service со сбоями: повторы, бюджет повторов и дедлайны по методам.
+ */
+public class GrpcCallPolicyTest extends TestCase {
+
+    private DomainInstance instance;
+    private ManagedChannel channel;
+    private ReviewServiceGrpc.ReviewServiceBlockingStub stub;
+
+    @Override
+    protected void setUp() throws Exception {
+        instance = new DomainInstance("domain-" + System.nanoTime());
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        if (channel != null) {
+            channel.shutdownNow().awaitTermination(5, TimeUnit.SECONDS);
+        }
+        instance.stop();
+    }
+
+    public void testRetryableStatusIsRetried() throws Exception {
+        open(Map.of());
+        instance.failures.add(Status.UNAVAILABLE);
+        instance.failures.add(Status.UNAVAILABLE);
+
+        stub.getAllReviews(GetAllReviewsRequest.getDefaultInstance());
+
+        assertEquals(3, instance.calls.get());
+    }
+
+    public void testRetriesStopAtMaxAttempts() throws Exception {
+        open(Map.of());
+        instance.failAll = Status.UNAVAILABLE;
+
+        assertEquals(Status.Code.UNAVAILABLE, failure(() -> stub.getAllReviews(GetAllReviewsRequest.getDefaultInstance())));
+        assertEquals(3, instance.calls.get());
+    }
+
+    public void testNonRetryableStatusIsNotRetried() throws Exception {
+        open(Map.of());
+        instance.failures.add(Status.INTERNAL);
+
+        assertEquals(Status.Code.INTERNAL, failure(() -> stub.getAllReviews(GetAllReviewsRequest.getDefaultInstance())));
+        assertEquals(1, instance.calls.get());
+    }
+
+    public void testWritesAreNotRetried() throws Exception {
+        open(Map.of());
+        instance.failures.add(Status.UNAVAILABLE);
+
+        assertEquals(Status.Code.UNAVAILABLE, failure(() -> stub.createReview(CreateReviewRequest.getDefaultInstance())));
+        assertEquals(1, instance.calls.get());
+    }
+
+    /**
+     * max-tokens=10, token-ratio=0.1: каждая неудачная попытка тратит жетон, повтор разрешён,
+     * пока жетонов больше половины. При постоянных сбоях вызовы быстро переходят на одну попытку.
+     */
+    public void testRetryThrottlingStopsRetries() throws Exception {
+        open(Map.of());
+        instance.failAll = Status.UNAVAILABLE;
+
+        List<Integer> attempts = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            int before = instance.calls.get();
+            failure(() -> stub.getAllReviews(GetAllReviewsRequest.getDefaultInstance()));
+            attempts.add(instance.calls.get() - before);
+        }
+
+        // жетоны: 10 -> 7 за три попытки, 7 -> 5 за две, дальше повторов нет
+        assertEquals(List.of(3, 2, 1, 1, 1), attempts);
+    }
+
+    public void testPerMethodDeadlineFires() throws Exception {
+        Map<String, Object> overrides = new HashMap<>();
+        overrides.put("grpc.client.timeout.point-read-ms", "200");
+        overrides.put("grpc.client.timeout.write-ms", "300");
+        open(overrides);
+        instance.hang = true;
+
+        long started = System.nanoTime();
+        assertEquals(Status.Code.DEADLINE_EXCEEDED,
+                failure(() -> stub.getReview(GetReviewRequest.newBuilder().setId("r").build())));
+        assertElapsed(started, 200);
+
+        started = System.nanoTime();
+        assertEquals(Status.Code.DEADLINE_EXCEEDED,
+                failure(() -> stub.createReview(CreateReviewRequest.getDefaultInstance())));
+        assertElapsed(started, 300);
+    }
+
+    public void testShorterCallDeadlineWins() throws Exception {
+        open(Map.of());
+        instance.hang = true;
+
+        long started = System.nanoTime();
+        assertEquals(Status.Code.DEADLINE_EXCEEDED, failure(() -> stub.withDeadlineAfter(100, TimeUnit.MILLISECONDS)
+                .getAllReviews(GetAllReviewsRequest.getDefaultInstance())));
+        assertElapsed(started, 100);
+    }
+
+    private void open(Map<String, Object> overrides) throws Exception {
+        GrpcClientConfig config = GrpcClientConfigFixture.config(overrides);
+        channel = GrpcClientConfigFixture.channel(config, new SimpleMeterRegistry(), List.of(instance.name));
+        stub = ReviewServiceGrpc.newBlockingStub(channel);
+    }
+
+    private static Status.Code failure(Runnable call) {
+        try {
+            call.run();
+        } catch (StatusRuntimeException e) {
+            return e.getStatus().getCode();
+        }
+        fail("call succeeded");
+        return null;
+    }
+
+    private static void assertElapsed(long startedNanos, long deadlineMs) {
+        long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startedNanos);
+        assertTrue("elapsed " + elapsedMs + " ms, deadline " + deadlineMs + " ms",
+                elapsedMs >= deadlineMs - 20 && elapsedMs < deadlineMs + 1000);
+    }
+}
@@ -0,0 +1,86 @@
+package org.example.config;
+
+import io.grpc.EquivalentAddressGroup;
+import io.grpc.ManagedChannel;
+import io.grpc.NameResolver;
+import io.grpc.inprocess.InProcessChannelBuilder;
+import io.grpc.inprocess.InProcessSocketAddress;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.example.grpc.EndpointMetricsInterceptor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.convert.support.DefaultConversionService;
+import org.springframework.core.env.MapPropertySource;
+import org.springframework.core.env.StandardEnvironment;
+import org.springframework.core.io.support.ResourcePropertySource;
+
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * {@link GrpcClientConfig} со свойствами из application.properties (с заменой части из них)
+ * и канал из него к in-process экземплярам domain-service.
+ */
+final class GrpcClientConfigFixture {
+
+    private GrpcClientConfigFixture() {
+    }
+
+    static GrpcClientConfig config(Map<String, Object> overrides) throws IOException, IllegalAccessException {
+        StandardEnvironment environment = new StandardEnvironment();
+        environment.getPropertySources().addFirst(new ResourcePropertySource("classpath:application.properties"));
+        environment.getPropertySources().addFirst(new MapPropertySource("overrides", overrides));
+
+        GrpcClientConfig config = new GrpcClientConfig();
+        for (Field field : GrpcClientConfig.class.getDeclaredFields()) {
+            Value value = field.getAnnotation(Value.class);
+            if (value == null) {
+                continue;
+            }
+            String resolved = environment.resolveRequiredPlaceholders(value.value());
+            field.setAccessible(true);
+            field.set(config, DefaultConversionService.getSharedInstance().convert(resolved, field.getType()));
+        }
+        return config;
+    }
+
+    /**
+     * Канал в настройках config, адреса - имена in-process серверов.
+     */
+    static ManagedChannel channel(GrpcClientConfig config, SimpleMeterRegistry registry, List<String> servers) {
+        List<EquivalentAddressGroup> addresses = new ArrayList<>(servers.size());
+        for (String server : servers) {
+            addresses.add(new EquivalentAddressGroup(new InProcessSocketAddress(server)));
+        }
+        NameResolver.Factory resolver = new NameResolver.Factory() {
+            @Override
+            public NameResolver newNameResolver(URI targetUri, NameResolver.Args args) {
+                return new NameResolver() {
+                    @Override
+                    public String getServiceAuthority() {
+                        return "domain-service";
+                    }
+
+                    @Override
+                    public void start(Listener2 listener) {
+                        listener.onResult(ResolutionResult.newBuilder().setAddresses(addresses).build());
+                    }
+
+                    @Override
+                    public void shutdown() {
+                    }
+                };
+            }
+
+            @Override
+            public String getDefaultScheme() {
+                return "test";
+            }
+        };
+        return config.buildChannel(InProcessChannelBuilder.forTarget("test:///domain-service"), resolver,
+                new EndpointMetricsInterceptor(registry));
+    }
+}
@@ -0,0 +1,134 @@
+package org.example.config;
+
+import io.grpc.ManagedChannel;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import junit.framework.TestCase;
+import org.example.domainservice.GetReviewRequest;
+import org.example.domainservice.ReviewServiceGrpc;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Балансировка канала из {@link GrpcClientConfig} (round_robin с проверкой здоровья)
+ * по нескольким in-process экземплярам domain-service.
+ */
+public class GrpcLoadBalancingTest extends TestCase {
+
+    private static final int INSTANCES = 3;
+
+    private final List<DomainInstance> instances = new ArrayList<>();
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private ManagedChannel channel;
+    private ReviewServiceGrpc.ReviewServiceBlockingStub stub;
+
+    @Override
+    protected void setUp() throws Exception {
+        List<String> names = new ArrayList<>();
+        for (int i = 0; i < INSTANCES; i++) {
+            String name = "domain-" + i + "-" + System.nanoTime();
+            instances.add(new DomainInstance(name));
+            names.add(name);
+        }
+        // без копий точечных чтений: каждый вызов - ровно один вызов экземпляра
+        Map<String, Object> overrides = new HashMap<>();
+        overrides.put("grpc.client.hedging.enabled", "false");
+        channel = GrpcClientConfigFixture.channel(GrpcClientConfigFixture.config(overrides), registry, names);
+        stub = ReviewServiceGrpc.newBlockingStub(channel);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        channel.shutdownNow().awaitTermination(5, TimeUnit.SECONDS);
+        for (DomainInstance instance : instances) {
+            instance.stop();
+        }
+    }
+
+    public void testCallsAreSpreadAcrossInstances() throws Exception {
+        awaitServedBy(names(0, 1, 2));
+        resetCalls();
+
+        for (int i = 0; i < 30; i++) {
+            stub.getReview(GetReviewRequest.newBuilder().setId("r" + i).build());
+        }
+
+        for (DomainInstance instance : instances) {
+            assertEquals(instance.name, 10, instance.calls.get());
+            Counter counter = registry.find("grpc.client.calls")
+                    .tags("endpoint", instance.name, "method", "GetReview", "status", "OK")
+                    .counter();
+            assertNotNull("no endpoint metric for " + instance.name, counter);
+        }
+    }
+
+    public void testNotServingInstanceIsSkipped() throws Exception {
+        awaitServedBy(names(0, 1, 2));
+        instances.get(1).setServing(false);
+        awaitServedBy(names(0, 2));
+        resetCalls();
+
+        for (int i = 0; i < 20; i++) {
+            stub.getReview(GetReviewRequest.newBuilder().setId("r" + i).build());
+        }
+
+        assertEquals(0, instances.get(1).calls.get());
+        assertEquals(10, instances.get(0).calls.get());
+        assertEquals(10, instances.get(2).calls.get());
+
+        instances.get(1).setServing(true);
+        awaitServedBy(names(0, 1, 2));
+    }
+
+    public void testStoppedInstanceIsSkipped() throws Exception {
+        awaitServedBy(names(0, 1, 2));
+        instances.get(2).stop();
+        awaitServedBy(names(0, 1));
+        resetCalls();
+
+        for (int i = 0; i < 20; i++) {
+            stub.getReview(GetReviewRequest.newBuilder().setId("r" + i).build());
+        }
+
+        assertEquals(10, instances.get(0).calls.get());
+        assertEquals(10, instances.get(1).calls.get());
+    }
+
+    /**
+     * Вызовы, пока подряд идущие {@code 2 * expected.size()} ответа не придут ровно от expected:
+     * балансировщик узнаёт о смене состояния экземпляров асинхронно.
+     */
+    private void awaitServedBy(Set<String> expected) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        Set<String> served = new HashSet<>();
+        while (System.nanoTime() < deadline) {
+            served.clear();
+            for (int i = 0; i < 2 * expected.size(); i++) {
+                served.add(stub.getReview(GetReviewRequest.newBuilder().setId("probe").build()).getClient());
+            }
+            if (served.equals(expected)) {
+                return;
+            }
+            Thread.sleep(10);
+        }
+        fail("calls served by " + served + ", expected " + expected);
+    }
+
+    private Set<String> names(int... indexes) {
+        Set<String> names = new HashSet<>();
+        for (int index : indexes) {
+            names.add(instances.get(index).name);
+        }
+        return names;
+    }
+
+    private void resetCalls() {
+        instances.forEach(instance -> instance.calls.set(0));
+    }
+}
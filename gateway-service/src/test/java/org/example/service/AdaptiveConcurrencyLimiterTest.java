@@ -0,0 +1,216 @@
+package org.example.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Окно пересчёта и арифметика предела {@link AdaptiveConcurrencyLimiter}; время ответа задаёт тест.
+ * Пересчёт за окно: gradient = clamp(1.5 * minRtt / rtt, 0.5, 1), новый предел -
+ * 0.8 * limit + 0.2 * (limit * gradient + √limit); при перегрузке limit * 0.9.
+ */
+public class AdaptiveConcurrencyLimiterTest extends TestCase {
+
+    private static final double DELTA = 1e-9;
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private long nanos;
+    private AdaptiveConcurrencyLimiter limiter;
+
+    @Override
+    protected void setUp() {
+        limiter = limiter(20, 5, 100);
+    }
+
+    public void testCallsOverLimitAreRejected() {
+        List<CompletableFuture<String>> calls = start(20);
+
+        CompletableFuture<String> rejected = call(new CompletableFuture<>());
+
+        LimitExceededException e = failure(rejected, LimitExceededException.class);
+        assertEquals(7, e.getRetryAfterSeconds());
+        assertEquals(1.0, registry.get("gateway.concurrency.rejected").tag("type", "read").counter().count(), DELTA);
+        assertEquals(20.0, registry.get("gateway.concurrency.inflight").tag("type", "read").gauge().value(), DELTA);
+
+        calls.get(0).complete("done");
+        assertFalse(call(new CompletableFuture<>()).isCompletedExceptionally());
+    }
+
+    public void testThrowingCallReleasesPermit() {
+        start(19);
+
+        CompletableFuture<String> failed = limiter.execute(() -> {
+            throw new IllegalStateException("no channel");
+        }, ex -> true);
+
+        failure(failed, IllegalStateException.class);
+        start(1);
+        failure(call(new CompletableFuture<>()), LimitExceededException.class);
+    }
+
+    public void testLimitChangesOnlyOncePerWindow() {
+        window(20, 10);
+        assertEquals(20, limiter.getLimit());
+
+        // окно - max(10, limit) ответов: 19 медленных ответов предел не меняют
+        window(19, 30);
+        assertEquals(20, limiter.getLimit());
+        // двадцатый закрывает окно: 20.894 -> 19.719
+        window(1, 30);
+        assertEquals(19, limiter.getLimit());
+    }
+
+    public void testSmallLimitWaitsForMinimumWindow() {
+        limiter = limiter(5, 1, 100);
+
+        // 5 ответов при пределе 5 - ещё не окно (минимум 10)
+        window(5, 10);
+        assertEquals(5, limiter.getLimit());
+        window(5, 10);
+        // 5 -> 0.8 * 5 + 0.2 * (5 + √5) = 5.447
+        assertEquals(5, limiter.getLimit());
+        window(5, 10);
+        window(5, 10);
+        // 5.447 -> 5.914
+        assertEquals(5, limiter.getLimit());
+        for (int i = 0; i < 4; i++) {
+            window(5, 10);
+        }
+        assertEquals(6, limiter.getLimit());
+    }
+
+    public void testLimitGrowsBySquareRootWhileRttIsFlat() {
+        // 20 -> 20.894 -> 21.809 -> 22.743 -> 23.696 -> 24.670
+        int[] expected = {20, 21, 22, 23, 24};
+        for (int limit : expected) {
+            window(limiter.getLimit(), 10);
+            assertEquals(limit, limiter.getLimit());
+        }
+    }
+
+    public void testLimitDoesNotGrowWhenUnderused() {
+        for (int i = 0; i < 3; i++) {
+            // вызовы по одному: в работе меньше половины предела
+            for (int j = 0; j < 20; j++) {
+                window(1, 10);
+            }
+        }
+        assertEquals(20, limiter.getLimit());
+    }
+
+    public void testSlowdownWithinToleranceStillGrows() {
+        window(20, 10);
+
+        // 14 мс < 1.5 * 10 мс: gradient = 1, 20.894 -> 21.809
+        window(20, 14);
+
+        assertEquals(21, limiter.getLimit());
+    }
+
+    public void testSlowdownShrinksLimitWithGradientFloor() {
+        window(20, 10);
+        AdaptiveConcurrencyLimiter slower = limiter(20, 5, 100);
+        window(slower, 20, 10);
+
+        // 30 мс: gradient = 1.5 * 10 / 30 = 0.5, 20.894 -> 0.8 * 20.894 + 0.2 * (10.447 + 4.571) = 19.719
+        window(20, 30);
+        // 300 мс: gradient ограничен снизу 0.5 - то же снижение
+        window(slower, 20, 300);
+
+        assertEquals(19, limiter.getLimit());
+        assertEquals(19, slower.getLimit());
+    }
+
+    public void testDroppedCallsBackOffMultiplicatively() {
+        CompletableFuture<String> timeout = new CompletableFuture<>();
+        CompletableFuture<String> other = new CompletableFuture<>();
+        limiter.execute(() -> timeout, ex -> ex instanceof TimeoutException);
+        limiter.execute(() -> other, ex -> ex instanceof TimeoutException);
+
+        other.completeExceptionally(new IllegalArgumentException("bad request"));
+        assertEquals(20, limiter.getLimit());
+
+        // 20 -> 18 -> 16.2 -> 14.58
+        timeout.completeExceptionally(new TimeoutException());
+        assertEquals(18, limiter.getLimit());
+        drop();
+        assertEquals(16, limiter.getLimit());
+        drop();
+        assertEquals(14, limiter.getLimit());
+    }
+
+    public void testLimitStaysWithinBounds() {
+        limiter = limiter(20, 5, 25);
+        for (int i = 0; i < 20; i++) {
+            window(limiter.getLimit(), 10);
+        }
+        assertEquals(25, limiter.getLimit());
+
+        for (int i = 0; i < 50; i++) {
+            drop();
+        }
+        assertEquals(5, limiter.getLimit());
+
+        assertEquals(100, limiter(500, 5, 100).getLimit());
+        assertEquals(5, limiter(1, 5, 100).getLimit());
+    }
+
+    private AdaptiveConcurrencyLimiter limiter(int initial, int min, int max) {
+        return new AdaptiveConcurrencyLimiter("read", initial, min, max, 7, registry, () -> nanos);
+    }
+
+    /**
+     * calls одновременных вызовов, все отвечают через rttMs.
+     */
+    private void window(int calls, long rttMs) {
+        window(limiter, calls, rttMs);
+    }
+
+    private void window(AdaptiveConcurrencyLimiter target, int calls, long rttMs) {
+        List<CompletableFuture<String>> results = new ArrayList<>(calls);
+        for (int i = 0; i < calls; i++) {
+            CompletableFuture<String> result = new CompletableFuture<>();
+            assertFalse(target.execute(() -> result, ex -> false).isCompletedExceptionally());
+            results.add(result);
+        }
+        nanos += TimeUnit.MILLISECONDS.toNanos(rttMs);
+        results.forEach(result -> result.complete("ok"));
+    }
+
+    private void drop() {
+        CompletableFuture<String> result = new CompletableFuture<>();
+        limiter.execute(() -> result, ex -> true);
+        result.completeExceptionally(new TimeoutException());
+    }
+
+    private List<CompletableFuture<String>> start(int calls) {
+        List<CompletableFuture<String>> results = new ArrayList<>(calls);
+        for (int i = 0; i < calls; i++) {
+            CompletableFuture<String> result = new CompletableFuture<>();
+            assertFalse(call(result).isCompletedExceptionally());
+            results.add(result);
+        }
+        return results;
+    }
+
+    private CompletableFuture<String> call(CompletableFuture<String> result) {
+        return limiter.execute(() -> result, ex -> false);
+    }
+
+    private static <E extends Throwable> E failure(CompletableFuture<?> future, Class<E> type) {
+        try {
+            future.join();
+        } catch (CompletionException e) {
+            assertTrue(String.valueOf(e.getCause()), type.isInstance(e.getCause()));
+            return type.cast(e.getCause());
+        }
+        fail("call succeeded");
+        return null;
+    }
+}
@@ -0,0 +1,98 @@
+package org.example.service;
+
+import junit.framework.TestCase;
+import org.example.config.RedisConfig;
+import org.example.dto.ReviewDto;
+import org.springframework.data.redis.serializer.GenericJackson2JsonRedisSerializer;
+import org.springframework.data.redis.serializer.SerializationException;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Формат значений кеша отзывов: protobuf, protobuf+LZ4 от порога сжатия и чтение прежнего JSON.
+ */
+public class ReviewValueCodecTest extends TestCase {
+
+    private static final int THRESHOLD = 512;
+
+    private final GenericJackson2JsonRedisSerializer legacyJson =
+            new GenericJackson2JsonRedisSerializer(new RedisConfig().objectMapper());
+    private final ReviewValueCodec codec = new ReviewValueCodec(legacyJson, THRESHOLD, true);
+
+    public void testSmallValueIsPlainProtobuf() {
+        ReviewDto review = review("a".repeat(10));
+
+        byte[] value = codec.serialize(review);
+
+        assertEquals(0x01, value[0]);
+        assertReview(review, codec.deserialize(value));
+    }
+
+    public void testValueAtThresholdIsCompressed() {
+        // comment добирает protobuf до порога: тег, длина в два байта (comment длиннее 127) и текст
+        int overhead = codec.serialize(review("")).length - 1 + 3;
+        ReviewDto atThreshold = review("x".repeat(THRESHOLD - overhead));
+        ReviewDto belowThreshold = review("x".repeat(THRESHOLD - overhead - 1));
+
+        byte[] compressed = codec.serialize(atThreshold);
+        byte[] plain = codec.serialize(belowThreshold);
+
+        assertEquals(0x02, compressed[0]);
+        assertTrue("compressed to " + compressed.length, compressed.length < THRESHOLD / 4);
+        assertReview(atThreshold, codec.deserialize(compressed));
+        assertEquals(0x01, plain[0]);
+        assertEquals(THRESHOLD, plain.length);
+        assertReview(belowThreshold, codec.deserialize(plain));
+    }
+
+    public void testLargeCyrillicValueRoundTrips() {
+        ReviewDto review = review("Отличный сервис, приду ещё. ".repeat(200));
+
+        assertReview(review, codec.deserialize(codec.serialize(review)));
+    }
+
+    public void testLegacyJsonIsRead() {
+        ReviewDto review = review("старый формат");
+        byte[] legacy = legacyJson.serialize(review);
+        assertEquals('{', legacy[0]);
+
+        assertReview(review, codec.deserialize(legacy));
+    }
+
+    public void testJsonModeWritesLegacyAndReadsBoth() {
+        ReviewValueCodec jsonCodec = new ReviewValueCodec(legacyJson, THRESHOLD, false);
+        ReviewDto review = review("x".repeat(2 * THRESHOLD));
+
+        byte[] json = jsonCodec.serialize(review);
+
+        assertEquals('{', json[0]);
+        assertReview(review, jsonCodec.deserialize(json));
+        assertReview(review, jsonCodec.deserialize(codec.serialize(review)));
+        assertReview(review, codec.deserialize(json));
+    }
+
+    public void testUnknownFormatIsRejected() {
+        try {
+            codec.deserialize("[]".getBytes(StandardCharsets.UTF_8));
+            fail("unknown format accepted");
+        } catch (SerializationException expected) {
+        }
+    }
+
+    public void testNullAndEmpty() {
+        assertNull(codec.serialize(null));
+        assertNull(codec.deserialize(null));
+        assertNull(codec.deserialize(new byte[0]));
+    }
+
+    private static ReviewDto review(String comment) {
+        return new ReviewDto("65a000000000000000000001", "Анна", 4, comment);
+    }
+
+    private static void assertReview(ReviewDto expected, ReviewDto actual) {
+        assertEquals(expected.getId(), actual.getId());
+        assertEquals(expected.getClient(), actual.getClient());
+        assertEquals(expected.getRating(), actual.getRating());
+        assertEquals(expected.getComment(), actual.getComment());
+    }
+}